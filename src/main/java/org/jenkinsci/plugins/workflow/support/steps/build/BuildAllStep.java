@@ -0,0 +1,148 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.model.ParameterValue;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * Triggers several downstream builds at once and waits for them, as a lighter alternative to {@code parallel} branches
+ * each running {@link BuildTriggerStep}.
+ */
+public class BuildAllStep extends Step {
+
+    /** When the step completes. */
+    public enum Mode {
+        /** Once all downstream builds have completed. */
+        ALL,
+        /** As soon as any downstream build succeeds, aborting the others; or once all have completed unsuccessfully. */
+        ANY,
+        /** Once all downstream builds have completed, or as soon as one is unsuccessful, aborting the others. */
+        FAIL_FAST
+    }
+
+    private final List<Target> builds;
+    private Mode mode = Mode.ALL;
+    private boolean propagate = true;
+
+    @DataBoundConstructor
+    public BuildAllStep(List<Target> builds) {
+        this.builds = builds;
+    }
+
+    public List<Target> getBuilds() {
+        return builds;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    @DataBoundSetter public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public boolean isPropagate() {
+        return propagate;
+    }
+
+    @DataBoundSetter public void setPropagate(boolean propagate) {
+        this.propagate = propagate;
+    }
+
+    @Override
+    public StepExecution start(StepContext context) {
+        return new BuildAllStepExecution(this, context);
+    }
+
+    /** One downstream build to trigger. */
+    public static final class Target extends AbstractDescribableImpl<Target> {
+
+        private final String job;
+        private String name;
+        private List<ParameterValue> parameters;
+        private Integer quietPeriod;
+
+        @DataBoundConstructor
+        public Target(String job) {
+            this.job = job;
+        }
+
+        public String getJob() {
+            return job;
+        }
+
+        /** Key of this build in the map returned by the step; defaults to {@link #getJob}. */
+        public @CheckForNull String getName() {
+            return name;
+        }
+
+        @DataBoundSetter public void setName(String name) {
+            this.name = Util.fixEmptyAndTrim(name);
+        }
+
+        public List<ParameterValue> getParameters() {
+            return parameters;
+        }
+
+        @DataBoundSetter public void setParameters(List<ParameterValue> parameters) {
+            this.parameters = parameters;
+        }
+
+        public Integer getQuietPeriod() {
+            return quietPeriod;
+        }
+
+        @DataBoundSetter public void setQuietPeriod(Integer quietPeriod) {
+            this.quietPeriod = quietPeriod;
+        }
+
+        @NonNull String getKey() {
+            return name != null ? name : job;
+        }
+
+        @Extension
+        public static class DescriptorImpl extends Descriptor<Target> {
+        }
+
+    }
+
+    @Extension
+    public static class DescriptorImpl extends StepDescriptor {
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            Set<Class<?>> context = new HashSet<>();
+            Collections.addAll(context, FlowNode.class, Run.class, TaskListener.class);
+            return Collections.unmodifiableSet(context);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "buildAll";
+        }
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return "Build several jobs";
+        }
+
+    }
+}
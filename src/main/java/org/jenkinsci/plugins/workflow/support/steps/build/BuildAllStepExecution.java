@@ -0,0 +1,531 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
+import hudson.console.ModelHyperlinkNote;
+import hudson.model.Action;
+import hudson.model.Actionable;
+import hudson.model.CauseAction;
+import hudson.model.Executor;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.ParameterValue;
+import hudson.model.ParametersAction;
+import hudson.model.Queue;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.CauseOfInterruption;
+import jenkins.model.Jenkins;
+import jenkins.model.ParameterizedJobMixIn;
+import org.jenkinsci.plugins.workflow.actions.LabelAction;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+import org.jenkinsci.plugins.workflow.steps.FlowInterruptedException;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+
+/**
+ * Schedules every build of a {@link BuildAllStep} under one queue lock and collects their results.
+ * {@link BuildTriggerListener} and {@link BuildQueueListener} report progress through the {@link BuildTriggerAction.Trigger#key}.
+ */
+public class BuildAllStepExecution extends AbstractStepExecutionImpl {
+
+    private static final Logger LOGGER = Logger.getLogger(BuildAllStepExecution.class.getName());
+
+    /** Executions currently waiting, so that listeners can find them from a trigger. */
+    private static final Map<StepContext, BuildAllStepExecution> RUNNING = new ConcurrentHashMap<>();
+
+    private final transient BuildAllStep step;
+
+    private final BuildAllStep.Mode mode;
+    private final boolean propagate;
+
+    /** State of each downstream build, in the order given to the step. */
+    private final Map<String, Downstream> downstreams = new LinkedHashMap<>();
+
+    /** Set once the step has completed; later notifications are ignored. */
+    private boolean done;
+
+    /** Persistent state of one downstream build. */
+    private static final class Downstream implements Serializable {
+
+        private final String job;
+
+        /** {@link Queue.Item#getId}, once scheduled. */
+        @CheckForNull Long queueItemId;
+
+        /** {@link Run#getExternalizableId}, once started. */
+        @CheckForNull String runId;
+
+        /** {@link Result#toString} once completed. */
+        @CheckForNull String result;
+
+        /** Why the build never ran or completed, if cancelled or deleted. */
+        @CheckForNull String failure;
+
+        Downstream(String job) {
+            this.job = job;
+        }
+
+        boolean isCompleted() {
+            return result != null || failure != null;
+        }
+
+        boolean isSuccess() {
+            return Result.SUCCESS.toString().equals(result);
+        }
+
+        private static final long serialVersionUID = 1L;
+
+    }
+
+    public BuildAllStepExecution(BuildAllStep step, @NonNull StepContext context) {
+        super(context);
+        this.step = step;
+        this.mode = step.getMode();
+        this.propagate = step.isPropagate();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"}) // as in BuildTriggerStepExecution
+    @Override
+    public boolean start() throws Exception {
+        List<BuildAllStep.Target> targets = step.getBuilds();
+        if (targets == null || targets.isEmpty()) {
+            throw new AbortException("No builds specified");
+        }
+        StepContext context = getContext();
+        Run<?, ?> upstream = context.get(Run.class);
+        FlowNode node = context.get(FlowNode.class);
+        TaskListener listener = context.get(TaskListener.class);
+
+        // Resolve everything first, so that a bad entry fails the step before anything is scheduled.
+        Map<String, ParameterizedJobMixIn.ParameterizedJob> jobs = new LinkedHashMap<>();
+        Map<String, List<Action>> actions = new LinkedHashMap<>();
+        Map<String, Integer> quietPeriods = new LinkedHashMap<>();
+        Map<String, BuildTriggerAction.Trigger> triggers = new LinkedHashMap<>();
+        for (BuildAllStep.Target target : targets) {
+            String key = target.getKey();
+            if (jobs.containsKey(key)) {
+                throw new AbortException("Duplicate build name " + key + "; use the name option to distinguish builds of the same job");
+            }
+            Item item = ResolvedItemCache.resolve(target.getJob(), upstream.getParent());
+            if (item == null) {
+                throw new AbortException("No item named " + target.getJob() + " found");
+            }
+            item.checkPermission(Item.BUILD);
+            if (!(item instanceof ParameterizedJobMixIn.ParameterizedJob)) {
+                throw new AbortException("The item named " + target.getJob() + " cannot be built by buildAll");
+            }
+            ParameterizedJobMixIn.ParameterizedJob project = (ParameterizedJobMixIn.ParameterizedJob) item;
+            List<Action> a = new ArrayList<>();
+            a.add(new CauseAction(new BuildUpstreamCause(node, upstream)));
+            a.add(new BuildUpstreamNodeAction(node, upstream));
+            a.add(BuildTraceAction.child(upstream, node, key));
+            BuildTriggerAction.Trigger trigger = new BuildTriggerAction.Trigger(context, propagate, false, key);
+            a.add(new BuildTriggerAction(trigger));
+            triggers.put(key, trigger);
+            List<ParameterValue> parameters = target.getParameters();
+            if (parameters != null) {
+                a.add(new ParametersAction(BuildTriggerStepExecution.completeDefaultParameters(parameters, (Job) project, context)));
+            }
+            jobs.put(key, project);
+            actions.put(key, a);
+            quietPeriods.put(key, target.getQuietPeriod() != null ? target.getQuietPeriod() : -1);
+            downstreams.put(key, new Downstream(project.getFullName()));
+        }
+
+        node.addAction(new LabelAction(Messages.BuildAllStepExecution_building(jobs.size())));
+        for (ParameterizedJobMixIn.ParameterizedJob project : jobs.values()) {
+            DownstreamBuildAction.getOrCreate(upstream, node.getId(), project);
+            listener.getLogger().println("Scheduling project: " + ModelHyperlinkNote.encodeTo(project));
+        }
+
+        RUNNING.put(context, this);
+        List<String> refused = new ArrayList<>();
+        try {
+            // Holding the lock means none of the builds can start before all have been recorded here.
+            Queue.withLock(() -> {
+                for (Map.Entry<String, ParameterizedJobMixIn.ParameterizedJob> entry : jobs.entrySet()) {
+                    String key = entry.getKey();
+                    Queue.Item queueItem = ParameterizedJobMixIn.scheduleBuild2(
+                            (Job<?, ?>) entry.getValue(), quietPeriods.get(key), actions.get(key).toArray(new Action[0]));
+                    if (queueItem == null || queueItem.getFuture() == null) {
+                        refused.add(entry.getValue().getFullName());
+                    } else {
+                        triggers.get(key).scheduled();
+                        synchronized (this) {
+                            downstreams.get(key).queueItemId = queueItem.getId();
+                        }
+                    }
+                }
+            });
+        } catch (RuntimeException x) {
+            RUNNING.remove(context);
+            stopAll(new BuildTriggerCancelledCause(x));
+            throw x;
+        }
+        if (!refused.isEmpty()) {
+            RUNNING.remove(context);
+            AbortException x = new AbortException("Failed to trigger build of " + String.join(", ", refused));
+            stopAll(new BuildTriggerCancelledCause(x));
+            throw x;
+        }
+        return false;
+    }
+
+    @Override
+    public void onResume() {
+        RUNNING.put(getContext(), this);
+        // Catch up on anything which started or finished while the execution was not registered.
+        // BuildTriggerListener leaves the trigger on a build finalized meanwhile, so it is looked for here.
+        Map<String, Run<?, ?>> finished = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        boolean found = false;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+                for (Map.Entry<String, Downstream> entry : downstreams.entrySet()) {
+                    Downstream d = entry.getValue();
+                    if (d.isCompleted()) {
+                        continue;
+                    }
+                    Run<?, ?> run;
+                    if (d.runId != null) {
+                        run = Run.fromExternalizableId(d.runId);
+                        if (run == null) {
+                            missing.add(entry.getKey());
+                            continue;
+                        }
+                    } else {
+                        run = find(entry.getKey(), d);
+                        if (run == null) {
+                            continue;
+                        }
+                        d.runId = run.getExternalizableId();
+                        found = true;
+                    }
+                    if (!run.isBuilding()) {
+                        finished.put(entry.getKey(), run);
+                    }
+                }
+            }
+        }
+        if (found) {
+            getContext().saveState();
+        }
+        for (Map.Entry<String, Run<?, ?>> entry : finished.entrySet()) {
+            BuildTriggerAction.take(entry.getValue(), getContext(), entry.getKey());
+            completed(entry.getValue(), entry.getKey());
+        }
+        for (String key : missing) {
+            failed(key, new AbortException(downstreams.get(key).job + " was deleted"));
+        }
+    }
+
+    /**
+     * Looks for the build of one key whose start was not recorded, as when it started before the execution resumed.
+     * Tries the queue item first, which is remembered for a while after it leaves the queue, and then {@link BuildGraphIndex}.
+     */
+    private @CheckForNull Run<?, ?> find(@NonNull String key, @NonNull Downstream d) {
+        if (d.queueItemId != null) {
+            Queue.Item i = Queue.getInstance().getItem(d.queueItemId);
+            if (i instanceof Queue.LeftItem) {
+                Queue.Executable exec = ((Queue.LeftItem) i).getExecutable();
+                if (exec instanceof Run) {
+                    return (Run<?, ?>) exec;
+                }
+            }
+            if (i != null) {
+                // Still queued, or cancelled, in which case BuildQueueListener already reported it.
+                return null;
+            }
+        }
+        try {
+            String upstreamId = getContext().get(Run.class).getExternalizableId();
+            String nodeId = getContext().get(FlowNode.class).getId();
+            for (BuildGraphIndex.Edge e : BuildGraphIndex.get().getDownstream(upstreamId)) {
+                if (!e.getFlowNodeId().equals(nodeId) || !e.getJobFullName().equals(d.job)) {
+                    continue;
+                }
+                Run<?, ?> run = Run.fromExternalizableId(e.getDownstreamId());
+                if (run != null && hasTrigger(run, key)) {
+                    return run;
+                }
+            }
+        } catch (IOException | InterruptedException x) {
+            LOGGER.log(Level.WARNING, "failed to look for downstream builds of " + getContext(), x);
+        }
+        return null;
+    }
+
+    private boolean hasTrigger(@NonNull Run<?, ?> run, @NonNull String key) {
+        for (BuildTriggerAction.Trigger trigger : BuildTriggerAction.triggersFor(run)) {
+            if (key.equals(trigger.key) && getContext().equals(trigger.context)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Whether a step is waiting and has been registered since it started or resumed. */
+    static boolean isRunning(@NonNull StepContext context) {
+        return RUNNING.containsKey(context);
+    }
+
+    /** Called by {@link BuildTriggerListener#onStarted}. */
+    static void started(@NonNull StepContext context, @NonNull String key, @NonNull Run<?, ?> run) {
+        BuildAllStepExecution execution = RUNNING.get(context);
+        if (execution == null) {
+            LOGGER.log(Level.FINE, "{0} not running to record start of {1}", new Object[] {context, run});
+            return;
+        }
+        synchronized (execution) {
+            Downstream d = execution.downstreams.get(key);
+            if (d == null || execution.done) {
+                return;
+            }
+            d.runId = run.getExternalizableId();
+        }
+        execution.getContext().saveState();
+    }
+
+    /** Called by {@link BuildTriggerListener#onFinalized}. */
+    static void completed(@NonNull StepContext context, @NonNull String key, @NonNull Run<?, ?> run) {
+        BuildAllStepExecution execution = RUNNING.get(context);
+        if (execution == null) {
+            LOGGER.log(Level.FINE, "{0} not running to record completion of {1}", new Object[] {context, run});
+            return;
+        }
+        execution.completed(run, key);
+    }
+
+    /** Called when a downstream build was cancelled in the queue or deleted. */
+    static void failed(@NonNull StepContext context, @NonNull String key, @NonNull Throwable failure) {
+        BuildAllStepExecution execution = RUNNING.get(context);
+        if (execution == null) {
+            LOGGER.log(Level.FINE, null, failure);
+            return;
+        }
+        execution.failed(key, failure);
+    }
+
+    private void completed(@NonNull Run<?, ?> run, @NonNull String key) {
+        Result result = run.getResult();
+        if (result == null) { /* probably impossible */
+            result = Result.FAILURE;
+        }
+        synchronized (this) {
+            Downstream d = downstreams.get(key);
+            if (d == null || done || d.isCompleted()) {
+                return;
+            }
+            d.runId = run.getExternalizableId();
+            d.result = result.toString();
+        }
+        progress();
+    }
+
+    private void failed(@NonNull String key, @NonNull Throwable failure) {
+        synchronized (this) {
+            Downstream d = downstreams.get(key);
+            if (d == null || done || d.isCompleted()) {
+                return;
+            }
+            d.failure = failure.getMessage() != null ? failure.getMessage() : failure.toString();
+        }
+        progress();
+    }
+
+    /** Decides whether the step is now complete, according to {@link #mode}. */
+    private void progress() {
+        boolean finish;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            boolean all = downstreams.values().stream().allMatch(Downstream::isCompleted);
+            finish = switch (mode) {
+                case ALL -> all;
+                case ANY -> all || downstreams.values().stream().anyMatch(Downstream::isSuccess);
+                case FAIL_FAST -> all || downstreams.values().stream().anyMatch(d -> d.isCompleted() && !d.isSuccess());
+            };
+            done = finish;
+        }
+        if (!finish) {
+            getContext().saveState();
+            return;
+        }
+        RUNNING.remove(getContext());
+        stopAll(new BuildAllCompletedCause());
+        finish();
+    }
+
+    private void finish() {
+        Map<String, RunWrapper> results = new LinkedHashMap<>();
+        List<CauseOfInterruption> causes = new ArrayList<>();
+        List<String> failures = new ArrayList<>();
+        Result worst = Result.SUCCESS;
+        boolean anySuccess = false;
+        try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+            for (Map.Entry<String, Downstream> entry : downstreams.entrySet()) {
+                Downstream d = entry.getValue();
+                Run<?, ?> run = d.runId != null ? Run.fromExternalizableId(d.runId) : null;
+                results.put(entry.getKey(), run != null ? new RunWrapper(run, false) : null);
+                if (d.isSuccess()) {
+                    anySuccess = true;
+                } else if (d.result != null && run != null) {
+                    causes.add(new DownstreamFailureCause(run));
+                    worst = worst.combine(Result.fromString(d.result));
+                } else if (d.failure != null) {
+                    failures.add(d.failure);
+                }
+            }
+        }
+        boolean failing = mode == BuildAllStep.Mode.ANY ? !anySuccess : !causes.isEmpty() || !failures.isEmpty();
+        if (!propagate || !failing) {
+            getContext().onSuccess(results);
+        } else if (!causes.isEmpty()) {
+            getContext().onFailure(new FlowInterruptedException(worst, false, causes.toArray(new CauseOfInterruption[0])));
+        } else {
+            getContext().onFailure(new AbortException(String.join("; ", failures)));
+        }
+    }
+
+    /**
+     * Cancels queued builds and aborts running ones that nothing else wants, then fails at once with {@code cause}.
+     * Aborted builds may still be finishing when the step completes; their results are not reported.
+     */
+    @Override
+    public void stop(@NonNull Throwable cause) throws Exception {
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            done = true;
+        }
+        RUNNING.remove(getContext());
+        stopAll(new BuildTriggerCancelledCause(cause));
+        getContext().onFailure(cause);
+    }
+
+    /**
+     * Withdraws this step from every downstream build which has not yet completed.
+     * As in {@link BuildTriggerStepExecution#queueTimeoutExpired}, a build is only cancelled or aborted if nothing else wants it:
+     * no other step is waiting for it and it has no causes besides this step.
+     */
+    private void stopAll(@NonNull CauseOfInterruption cause) {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return;
+        }
+        Map<String, Downstream> pending = new LinkedHashMap<>();
+        synchronized (this) {
+            for (Map.Entry<String, Downstream> entry : downstreams.entrySet()) {
+                if (!entry.getValue().isCompleted()) {
+                    pending.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        StepContext context = getContext();
+        BuildUpstreamCause ours;
+        try {
+            ours = new BuildUpstreamCause(context.get(FlowNode.class), context.get(Run.class));
+        } catch (IOException | InterruptedException x) {
+            LOGGER.log(Level.WARNING, "failed to stop downstream builds of " + context, x);
+            return;
+        }
+        Queue q = jenkins.getQueue();
+        try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+            for (Map.Entry<String, Downstream> entry : pending.entrySet()) {
+                String key = entry.getKey();
+                Downstream d = entry.getValue();
+                Run<?, ?> run = null;
+                if (d.runId != null) {
+                    run = Run.fromExternalizableId(d.runId);
+                } else if (d.queueItemId != null) {
+                    long id = d.queueItemId;
+                    Run<?, ?>[] started = new Run<?, ?>[1];
+                    Queue.withLock(() -> {
+                        Queue.Item i = q.getItem(id);
+                        if (i instanceof Queue.LeftItem) {
+                            Queue.Executable exec = ((Queue.LeftItem) i).getExecutable();
+                            if (exec instanceof Run) {
+                                started[0] = (Run<?, ?>) exec;
+                            }
+                        } else if (i != null && withdraw(i, key) && BuildTriggerAction.triggersFor(i).isEmpty() && i.getCauses().stream().allMatch(ours::equals)) {
+                            q.cancel(i);
+                        }
+                    });
+                    run = started[0];
+                }
+                if (run != null && run.isBuilding() && withdraw(run, key)) {
+                    if (BuildTriggerAction.triggersFor(run).isEmpty() && run.getCauses().stream().allMatch(ours::equals)) {
+                        Executor e = run.getExecutor();
+                        if (e != null) {
+                            e.interrupt(Result.ABORTED, cause);
+                        }
+                    } else {
+                        // Others are still waiting, so let it run; saved so the withdrawal survives a restart.
+                        try {
+                            run.save();
+                        } catch (IOException x) {
+                            LOGGER.log(Level.WARNING, "failed to save withdrawn trigger on " + run, x);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** Removes this step's trigger for one key from a queue item or build. */
+    private boolean withdraw(@NonNull Actionable actionable, @NonNull String key) {
+        boolean removed = false;
+        for (Action a : actionable.getActions()) {
+            if (a instanceof BuildTriggerAction) {
+                removed |= ((BuildTriggerAction) a).remove(getContext(), key);
+            }
+        }
+        return removed;
+    }
+
+    @Override public String getStatus() {
+        List<String> waiting = new ArrayList<>();
+        synchronized (this) {
+            for (Downstream d : downstreams.values()) {
+                if (!d.isCompleted()) {
+                    waiting.add(d.runId != null ? d.runId : d.job);
+                }
+            }
+        }
+        return "waiting for " + waiting.size() + " of " + downstreams.size() + " downstream builds: " + String.join(", ", waiting);
+    }
+
+    /** Why downstream builds were aborted once a {@link BuildAllStep.Mode#ANY} or {@link BuildAllStep.Mode#FAIL_FAST} step had its answer. */
+    private static final class BuildAllCompletedCause extends CauseOfInterruption {
+
+        @Override
+        public String getShortDescription() {
+            return "No longer needed by buildAll";
+        }
+
+        private static final long serialVersionUID = 1L;
+
+    }
+
+    private static final long serialVersionUID = 1L;
+
+}
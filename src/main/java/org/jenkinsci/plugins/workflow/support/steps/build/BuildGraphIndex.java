@@ -0,0 +1,610 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.model.Cause;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.RootAction;
+import hudson.model.Run;
+import hudson.model.listeners.ItemListener;
+import hudson.util.AtomicFileWriter;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+import org.kohsuke.stapler.verb.GET;
+
+/**
+ * Index of which builds were triggered by which {@code build} (or {@code buildAll}) steps, kept in an append-only file
+ * so that trigger trees can be walked, from Java or from {@code /build-graph/}, without loading any builds.
+ * Each line of {@code $JENKINS_HOME/org.jenkinsci.plugins.workflow.support.steps.build.BuildGraphIndex.log}
+ * records one event. Lines are written in batches on a background thread at most every {@link #INTERVAL}, and when Jenkins shuts down;
+ * at those times the file is instead rewritten without superseded lines if it has grown enough to be worth it.
+ * The file is read once during startup, so builds not triggered by a step are recognized without taking the lock.
+ */
+@Extension
+public final class BuildGraphIndex implements RootAction {
+
+    private static final Logger LOGGER = Logger.getLogger(BuildGraphIndex.class.getName());
+
+    /** Deepest tree served by {@link #doDownstream} and {@link #doUpstream}. */
+    static final int MAX_DEPTH = 20;
+
+    /** Delay before writing pending lines, in milliseconds, so that a burst of builds is written at once. */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for tests and script console")
+    static long INTERVAL = SystemProperties.getLong(BuildGraphIndex.class.getName() + ".INTERVAL", TimeUnit.SECONDS.toMillis(1));
+
+    private static final String STARTED = "S", FINALIZED = "F", DELETED = "D", JOB_DELETED = "J", JOB_RENAMED = "R";
+
+    /** One downstream build triggered by one step. */
+    public static final class Edge {
+
+        private final String upstreamId;
+        private final String flowNodeId;
+        private final String jobFullName;
+        private final int number;
+        private volatile String result;
+
+        Edge(@NonNull String upstreamId, @NonNull String flowNodeId, @NonNull String jobFullName, int number) {
+            this.upstreamId = upstreamId.intern();
+            this.flowNodeId = flowNodeId.intern();
+            this.jobFullName = jobFullName.intern();
+            this.number = number;
+        }
+
+        /** {@link Run#getExternalizableId} of the upstream build. */
+        public @NonNull String getUpstreamId() {
+            return upstreamId;
+        }
+
+        /** The step which triggered the build. */
+        public @NonNull String getFlowNodeId() {
+            return flowNodeId;
+        }
+
+        public @NonNull String getJobFullName() {
+            return jobFullName;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        /** {@link Run#getExternalizableId} of the downstream build. */
+        public @NonNull String getDownstreamId() {
+            return jobFullName + '#' + number;
+        }
+
+        /** {@link Result#toString} once the downstream build has finished, else null. */
+        public @CheckForNull String getResult() {
+            return result;
+        }
+
+        private Edge renamed(String oldFullName, String newFullName) {
+            String upstream = upstreamId;
+            if (upstream.startsWith(oldFullName + '#')) {
+                upstream = newFullName + upstream.substring(oldFullName.length());
+            }
+            Edge e = new Edge(upstream, flowNodeId, jobFullName.equals(oldFullName) ? newFullName : jobFullName, number);
+            e.result = result;
+            return e;
+        }
+
+        @Override
+        public String toString() {
+            return upstreamId + " " + flowNodeId + " → " + getDownstreamId() + (result != null ? " " + result : "");
+        }
+
+    }
+
+    /** Guarded by this, like everything below unless noted. Null until {@link #load}ed. */
+    private Map<String, List<Edge>> byUpstream;
+    private Map<String, List<Edge>> byDownstream;
+    /** Edges from or to builds of each job, for {@link #jobDeleted} and {@link #jobRenamed}. */
+    private Map<String, Set<Edge>> byJob;
+    /** Keys of {@link #byDownstream}, readable without the lock once {@link #loaded}. */
+    private final Set<String> downstreamIds = ConcurrentHashMap.newKeySet();
+    private volatile boolean loaded;
+    /** Lines in the file, including {@link #pending} ones, to decide when to compact it. */
+    private int lines;
+    /** Lines a compacted file would have: see {@link #snapshotLines(List)}. */
+    private int snapshotLines;
+    /** Lines not yet written. */
+    private List<String> pending = new ArrayList<>();
+    private boolean flushScheduled;
+    /** Held while writing the file, and taken before this if both are needed. */
+    private final Object fileLock = new Object();
+
+    static @NonNull BuildGraphIndex get() {
+        return ExtensionList.lookupSingleton(BuildGraphIndex.class);
+    }
+
+    /** Reads the file before any build can run, rather than on whichever listener thread first needs it. */
+    @Initializer(after = InitMilestone.EXTENSIONS_AUGMENTED, before = InitMilestone.JOB_LOADED)
+    public static void loadAtStartup() {
+        BuildGraphIndex index = get();
+        synchronized (index) {
+            index.load();
+        }
+    }
+
+    private File file() {
+        return new File(Jenkins.get().getRootDir(), BuildGraphIndex.class.getName() + ".log");
+    }
+
+    /** Builds triggered by a build. */
+    public synchronized @NonNull List<Edge> getDownstream(@NonNull String upstreamId) {
+        load();
+        return List.copyOf(byUpstream.getOrDefault(upstreamId, Collections.emptyList()));
+    }
+
+    /** Steps which triggered a build (usually just one). */
+    public synchronized @NonNull List<Edge> getUpstream(@NonNull String downstreamId) {
+        load();
+        return List.copyOf(byDownstream.getOrDefault(downstreamId, Collections.emptyList()));
+    }
+
+    /** Called when a build triggered by a step starts. */
+    synchronized void started(@NonNull String upstreamId, @NonNull String flowNodeId, @NonNull Run<?, ?> downstream) {
+        load();
+        String job = downstream.getParent().getFullName();
+        int number = downstream.getNumber();
+        for (Edge e : byUpstream.getOrDefault(upstreamId, Collections.emptyList())) {
+            if (e.flowNodeId.equals(flowNodeId) && e.jobFullName.equals(job) && e.number == number) {
+                return;
+            }
+        }
+        add(new Edge(upstreamId, flowNodeId, job, number));
+        append(STARTED, upstreamId, flowNodeId, job, Integer.toString(number));
+    }
+
+    /** Called when any build is finalized; ignored unless it was triggered by a step. */
+    void finalized(@NonNull Run<?, ?> downstream) {
+        Result result = downstream.getResult();
+        if (result == null) {
+            return;
+        }
+        String id = downstream.getExternalizableId();
+        List<BuildUpstreamCause> causes = new ArrayList<>(1);
+        for (Cause cause : downstream.getCauses()) {
+            if (cause instanceof BuildUpstreamCause) {
+                causes.add((BuildUpstreamCause) cause);
+            }
+        }
+        if (causes.isEmpty() && !downstreamIds.contains(id)) {
+            // Neither triggered nor reused by a step, as is most builds. Otherwise the index is loaded, by loadAtStartup or by started.
+            return;
+        }
+        synchronized (this) {
+            // BuildTriggerListener records the start asynchronously, so a quick build might otherwise finish first.
+            for (BuildUpstreamCause c : causes) {
+                started(c.getUpstreamProject() + '#' + c.getUpstreamBuild(), c.getNodeId(), downstream);
+            }
+            List<Edge> edges = byDownstream.get(id);
+            if (edges == null) {
+                return;
+            }
+            setResult(edges, result.toString());
+            append(FINALIZED, downstream.getParent().getFullName(), Integer.toString(downstream.getNumber()), result.toString());
+        }
+    }
+
+    /** Called when any build is deleted. */
+    void deleted(@NonNull Run<?, ?> run) {
+        String id = run.getExternalizableId();
+        if (loaded && !downstreamIds.contains(id) && run.getAction(DownstreamBuildAction.class) == null) {
+            return;
+        }
+        synchronized (this) {
+            load();
+            if (byDownstream.containsKey(id) || byUpstream.containsKey(id)) {
+                delete(id);
+                append(DELETED, run.getParent().getFullName(), Integer.toString(run.getNumber()));
+            }
+        }
+    }
+
+    private synchronized void jobDeleted(@NonNull String fullName) {
+        load();
+        if (jobDeleted0(fullName)) {
+            append(JOB_DELETED, fullName);
+        }
+    }
+
+    private synchronized void jobRenamed(@NonNull String oldFullName, @NonNull String newFullName) {
+        load();
+        if (jobRenamed0(oldFullName, newFullName)) {
+            append(JOB_RENAMED, oldFullName, newFullName);
+        }
+    }
+
+    private void add(Edge e) {
+        byUpstream.computeIfAbsent(e.upstreamId, k -> new ArrayList<>(1)).add(e);
+        String downstreamId = e.getDownstreamId();
+        List<Edge> down = byDownstream.computeIfAbsent(downstreamId, k -> new ArrayList<>(1));
+        snapshotLines -= snapshotLines(down);
+        down.add(e);
+        snapshotLines += snapshotLines(down);
+        downstreamIds.add(downstreamId);
+        byJob.computeIfAbsent(e.jobFullName, k -> new HashSet<>()).add(e);
+        byJob.computeIfAbsent(jobOf(e.upstreamId), k -> new HashSet<>()).add(e);
+    }
+
+    private void remove(Edge e) {
+        List<Edge> up = byUpstream.get(e.upstreamId);
+        if (up != null && up.remove(e) && up.isEmpty()) {
+            byUpstream.remove(e.upstreamId);
+        }
+        String downstreamId = e.getDownstreamId();
+        List<Edge> down = byDownstream.get(downstreamId);
+        if (down != null) {
+            snapshotLines -= snapshotLines(down);
+            if (down.remove(e) && down.isEmpty()) {
+                byDownstream.remove(downstreamId);
+                downstreamIds.remove(downstreamId);
+            }
+            snapshotLines += snapshotLines(down);
+        }
+        for (String job : new String[] {e.jobFullName, jobOf(e.upstreamId)}) {
+            Set<Edge> edges = byJob.get(job);
+            if (edges != null && edges.remove(e) && edges.isEmpty()) {
+                byJob.remove(job);
+            }
+        }
+    }
+
+    private void setResult(List<Edge> edges, String result) {
+        snapshotLines -= snapshotLines(edges);
+        for (Edge e : edges) {
+            e.result = result;
+        }
+        snapshotLines += snapshotLines(edges);
+    }
+
+    /** The result of a downstream build, if finished, which is the same on each of its edges. */
+    private static @CheckForNull String resultOf(List<Edge> edges) {
+        for (Edge e : edges) {
+            if (e.result != null) {
+                return e.result;
+            }
+        }
+        return null;
+    }
+
+    /** One {@link #STARTED} line per edge to a downstream build, plus one {@link #FINALIZED} line if it has finished. */
+    private static int snapshotLines(List<Edge> edges) {
+        return edges.size() + (resultOf(edges) != null ? 1 : 0);
+    }
+
+    private void delete(String id) {
+        List<Edge> edges = new ArrayList<>(byUpstream.getOrDefault(id, Collections.emptyList()));
+        edges.addAll(byDownstream.getOrDefault(id, Collections.emptyList()));
+        edges.forEach(this::remove);
+    }
+
+    private List<Edge> edgesOf(String fullName) {
+        return new ArrayList<>(byJob.getOrDefault(fullName, Collections.emptySet()));
+    }
+
+    private boolean jobDeleted0(String fullName) {
+        List<Edge> edges = edgesOf(fullName);
+        edges.forEach(this::remove);
+        return !edges.isEmpty();
+    }
+
+    private boolean jobRenamed0(String oldFullName, String newFullName) {
+        List<Edge> edges = edgesOf(oldFullName);
+        for (Edge e : edges) {
+            remove(e);
+            add(e.renamed(oldFullName, newFullName));
+        }
+        return !edges.isEmpty();
+    }
+
+    private void load() {
+        if (byUpstream != null) {
+            return;
+        }
+        byUpstream = new HashMap<>();
+        byDownstream = new HashMap<>();
+        byJob = new HashMap<>();
+        lines = 0;
+        snapshotLines = 0;
+        File f = file();
+        try (BufferedReader r = Files.newBufferedReader(f.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                lines++;
+                try {
+                    replay(split(line));
+                } catch (RuntimeException x) {
+                    LOGGER.log(Level.WARNING, x, () -> "skipping malformed line in " + f + ": " + line);
+                }
+            }
+        } catch (NoSuchFileException x) {
+            // Nothing recorded yet.
+        } catch (IOException x) {
+            LOGGER.log(Level.WARNING, "failed to load " + f, x);
+        }
+        loaded = true;
+        if (shouldCompact()) {
+            scheduleFlush();
+        }
+    }
+
+    private boolean shouldCompact() {
+        return lines > 1000 && lines > 3 * snapshotLines;
+    }
+
+    private void replay(String[] fields) {
+        switch (fields[0]) {
+            case STARTED -> add(new Edge(fields[1], fields[2], fields[3], Integer.parseInt(fields[4])));
+            case FINALIZED -> {
+                List<Edge> edges = byDownstream.get(fields[1] + '#' + fields[2]);
+                if (edges != null) {
+                    setResult(edges, fields[3]);
+                }
+            }
+            case DELETED -> delete(fields[1] + '#' + fields[2]);
+            case JOB_DELETED -> jobDeleted0(fields[1]);
+            case JOB_RENAMED -> jobRenamed0(fields[1], fields[2]);
+            default -> throw new IllegalArgumentException("unknown record type " + fields[0]);
+        }
+    }
+
+    private void append(String... fields) {
+        pending.add(line(fields));
+        lines++;
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            Timer.get().schedule(this::flush, INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** The edges to one downstream build, and its result, as of a compaction. */
+    private record Downstream(@NonNull Edge[] edges, @CheckForNull String result) {}
+
+    /**
+     * Writes pending lines, or if enough of the file is superseded, rewrites it with just the current edges.
+     * Only the file is locked while formatting and writing, so steps and listeners are not held up;
+     * the index itself is locked just long enough to copy the edges.
+     */
+    void flush() {
+        synchronized (fileLock) {
+            List<String> batch = null;
+            List<Downstream> snapshot = null;
+            synchronized (this) {
+                flushScheduled = false;
+                if (byUpstream == null) {
+                    return;
+                }
+                if (shouldCompact()) {
+                    // Pending lines are superseded by the snapshot.
+                    snapshot = new ArrayList<>(byDownstream.size());
+                    for (List<Edge> edges : byDownstream.values()) {
+                        snapshot.add(new Downstream(edges.toArray(new Edge[0]), resultOf(edges)));
+                    }
+                    lines = snapshotLines;
+                } else {
+                    batch = pending;
+                }
+                pending = new ArrayList<>();
+            }
+            if (snapshot != null) {
+                compact(snapshot);
+            } else if (!batch.isEmpty()) {
+                appendToFile(batch);
+            }
+        }
+    }
+
+    @Terminator
+    public static void flushAtShutdown() {
+        for (BuildGraphIndex index : ExtensionList.lookup(BuildGraphIndex.class)) {
+            index.flush();
+        }
+    }
+
+    private void compact(List<Downstream> snapshot) {
+        File f = file();
+        try {
+            AtomicFileWriter w = new AtomicFileWriter(f.toPath(), StandardCharsets.UTF_8);
+            int written = 0;
+            try {
+                for (Downstream d : snapshot) {
+                    for (Edge e : d.edges()) {
+                        w.write(line(STARTED, e.upstreamId, e.flowNodeId, e.jobFullName, Integer.toString(e.number)));
+                        written++;
+                    }
+                    if (d.result() != null) {
+                        Edge e = d.edges()[0];
+                        w.write(line(FINALIZED, e.jobFullName, Integer.toString(e.number), d.result()));
+                        written++;
+                    }
+                }
+                w.commit();
+            } finally {
+                w.abort();
+            }
+            int count = written;
+            LOGGER.fine(() -> "compacted " + f + " to " + count + " lines");
+        } catch (IOException x) {
+            LOGGER.log(Level.WARNING, "failed to compact " + f, x);
+        }
+    }
+
+    private void appendToFile(List<String> batch) {
+        File f = file();
+        try (Writer w = Files.newBufferedWriter(f.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (String line : batch) {
+                w.write(line);
+            }
+        } catch (IOException x) {
+            LOGGER.log(Level.WARNING, "failed to write to " + f, x);
+        }
+    }
+
+    private static String line(String... fields) {
+        StringBuilder b = new StringBuilder();
+        for (String field : fields) {
+            if (b.length() > 0) {
+                b.append('\t');
+            }
+            b.append(field.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n"));
+        }
+        return b.append('\n').toString();
+    }
+
+    private static String[] split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                fields.add(b.toString());
+                b.setLength(0);
+            } else if (c == '\\' && i + 1 < line.length()) {
+                char next = line.charAt(++i);
+                b.append(next == 't' ? '\t' : next == 'n' ? '\n' : next);
+            } else {
+                b.append(c);
+            }
+        }
+        fields.add(b.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    @Override
+    public @CheckForNull String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public @CheckForNull String getDisplayName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return "build-graph";
+    }
+
+    /**
+     * Serves the builds triggered by a build, recursively, as JSON.
+     * Builds of jobs the user cannot see are omitted, along with anything they triggered.
+     * @param run {@link Run#getExternalizableId} of the root build
+     * @param depth how many levels to follow, at least 1
+     */
+    @GET
+    public void doDownstream(StaplerRequest2 req, StaplerResponse2 rsp, @QueryParameter String run, @QueryParameter int depth) throws IOException {
+        serve(rsp, run, depth, true);
+    }
+
+    /** Like {@link #doDownstream} but following triggers back to upstream builds. */
+    @GET
+    public void doUpstream(StaplerRequest2 req, StaplerResponse2 rsp, @QueryParameter String run, @QueryParameter int depth) throws IOException {
+        serve(rsp, run, depth, false);
+    }
+
+    private void serve(StaplerResponse2 rsp, String run, int depth, boolean downstream) throws IOException {
+        Jenkins.get().checkPermission(Jenkins.READ);
+        if (run == null || !canRead(jobOf(run))) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        JSONObject root = new JSONObject();
+        root.put("run", run);
+        Set<String> visited = new HashSet<>();
+        visited.add(run);
+        root.put(downstream ? "downstream" : "upstream", tree(run, Math.max(1, Math.min(depth, MAX_DEPTH)), downstream, visited));
+        rsp.setContentType("application/json;charset=UTF-8");
+        root.write(rsp.getWriter());
+    }
+
+    private JSONArray tree(String id, int depth, boolean downstream, Set<String> visited) {
+        JSONArray array = new JSONArray();
+        for (Edge e : downstream ? getDownstream(id) : getUpstream(id)) {
+            String next = downstream ? e.getDownstreamId() : e.upstreamId;
+            if (!canRead(jobOf(next))) {
+                continue;
+            }
+            JSONObject o = new JSONObject();
+            o.put("upstream", e.upstreamId);
+            o.put("flowNodeId", e.flowNodeId);
+            o.put("job", e.jobFullName);
+            o.put("number", e.number);
+            o.put("result", e.result);
+            if (depth > 1 && visited.add(next)) {
+                o.put(downstream ? "downstream" : "upstream", tree(next, depth - 1, downstream, visited));
+            }
+            array.add(o);
+        }
+        return array;
+    }
+
+    private static String jobOf(String id) {
+        int hash = id.lastIndexOf('#');
+        return hash == -1 ? id : id.substring(0, hash);
+    }
+
+    /** Checks {@link Item#READ} without loading any builds. */
+    private static boolean canRead(String fullName) {
+        return Jenkins.get().getItemByFullName(fullName, Job.class) != null;
+    }
+
+    @Extension
+    public static final class Cleaner extends ItemListener {
+
+        @Override
+        public void onDeleted(Item item) {
+            if (item instanceof Job) {
+                get().jobDeleted(item.getFullName());
+            }
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            if (item instanceof Job) {
+                get().jobRenamed(oldFullName, newFullName);
+            }
+        }
+
+    }
+
+}
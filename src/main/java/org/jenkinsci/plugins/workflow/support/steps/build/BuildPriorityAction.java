@@ -0,0 +1,61 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Action;
+import hudson.model.InvisibleAction;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.queue.FoldableAction;
+import java.util.List;
+
+/**
+ * Ordering information for {@link BuildPrioritySorter}, attached to queue items scheduled by {@code build} steps.
+ * Records what the sorter needs so that it never has to load the upstream build.
+ * If a request is folded into an item already in the queue, the item keeps the more urgent of the two.
+ */
+public final class BuildPriorityAction extends InvisibleAction implements FoldableAction {
+
+    private final int priority;
+    /** {@link Run#getStartTimeInMillis} of the upstream build. */
+    private final long upstreamStartedAt;
+
+    BuildPriorityAction(int priority, long upstreamStartedAt) {
+        this.priority = priority;
+        this.upstreamStartedAt = upstreamStartedAt;
+    }
+
+    /**
+     * Creates the action for a build about to be triggered, if it is wanted:
+     * when a priority was requested, or when the sorter is on and can at least use the age of the upstream build.
+     */
+    static @CheckForNull BuildPriorityAction of(@CheckForNull Integer priority, @NonNull Run<?, ?> upstream) {
+        if (priority == null && !BuildPrioritySorter.ENABLED) {
+            return null;
+        }
+        return new BuildPriorityAction(priority != null ? priority : 0, upstream.getStartTimeInMillis());
+    }
+
+    /** Higher starts first; zero by default. */
+    public int getPriority() {
+        return priority;
+    }
+
+    public long getUpstreamStartedAt() {
+        return upstreamStartedAt;
+    }
+
+    /** Whether this should start before {@code other}. */
+    boolean isMoreUrgentThan(@NonNull BuildPriorityAction other) {
+        return priority != other.priority ? priority > other.priority : upstreamStartedAt < other.upstreamStartedAt;
+    }
+
+    @Override
+    public void foldIntoExisting(Queue.Item item, Queue.Task owner, List<Action> otherActions) {
+        BuildPriorityAction existing = item.getAction(BuildPriorityAction.class);
+        if (existing == null || isMoreUrgentThan(existing)) {
+            item.addOrReplaceAction(this);
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Action;
+import hudson.model.Queue;
+import hudson.model.queue.QueueSorter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Starts builds triggered by {@code build} steps in order of {@link BuildTriggerStep#getPriority}, highest first,
+ * and then of the age of their upstream build, oldest first, so that a long-running chain is not overtaken by newer ones.
+ * Other items are placed by the time they entered the queue.
+ * Only installed if {@link #ENABLED} and no other sorter, such as one from a plugin dedicated to prioritization, is in use.
+ * <p>Called from {@code Queue.maintain()} with the queue locked, so each item is looked at once,
+ * and the list is left alone unless some item carries a {@link BuildPriorityAction}.
+ */
+@Restricted(NoExternalUse.class)
+public final class BuildPrioritySorter extends QueueSorter {
+
+    private static final Logger LOGGER = Logger.getLogger(BuildPrioritySorter.class.getName());
+
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for tests and script console")
+    static boolean ENABLED = SystemProperties.getBoolean(BuildPrioritySorter.class.getName() + ".ENABLED");
+
+    private static final Comparator<Key> ORDER = Comparator.comparingInt((Key k) -> k.priority).reversed().thenComparingLong(k -> k.age);
+
+    /** Sort key of one item, computed once per sort. */
+    private static final class Key {
+
+        final Queue.BuildableItem item;
+        final int priority;
+        final long age;
+
+        Key(@NonNull Queue.BuildableItem item, int priority, long age) {
+            this.item = item;
+            this.priority = priority;
+            this.age = age;
+        }
+
+    }
+
+    /** After {@link QueueSorter#installDefaultQueueSorter}, which runs at the same milestone, so that a sorter it installs is seen below. */
+    @Initializer(after = InitMilestone.COMPLETED)
+    public static void install() {
+        if (!ENABLED) {
+            return;
+        }
+        Queue queue = Jenkins.get().getQueue();
+        QueueSorter existing = queue.getSorter();
+        if (existing != null && !(existing instanceof BuildPrioritySorter)) {
+            LOGGER.log(Level.WARNING, "Not ordering builds by priority, since the queue is already sorted by {0}", existing);
+            return;
+        }
+        queue.setSorter(new BuildPrioritySorter());
+    }
+
+    @Override
+    public void sortBuildableItems(List<Queue.BuildableItem> buildables) {
+        int size = buildables.size();
+        if (size < 2) {
+            return;
+        }
+        // Usually nothing is prioritized, in which case nothing is allocated.
+        int first = 0;
+        BuildPriorityAction action = null;
+        while (first < size && (action = actionOf(buildables.get(first))) == null) {
+            first++;
+        }
+        if (action == null) {
+            return;
+        }
+        Key[] keys = new Key[size];
+        for (int i = 0; i < size; i++) {
+            Queue.BuildableItem item = buildables.get(i);
+            if (i > first) {
+                action = actionOf(item);
+            }
+            if (i >= first && action != null) {
+                keys[i] = new Key(item, action.getPriority(), action.getUpstreamStartedAt());
+            } else {
+                keys[i] = new Key(item, 0, item.getInQueueSince());
+            }
+        }
+        // Stable, so items with equal keys keep their order.
+        Arrays.sort(keys, ORDER);
+        for (int i = 0; i < size; i++) {
+            buildables.set(i, keys[i].item);
+        }
+    }
+
+    /** Not {@code getAction(Class)}, which also consults {@code TransientActionFactory}. */
+    private static @CheckForNull BuildPriorityAction actionOf(@NonNull Queue.Item item) {
+        for (Action a : item.getActions()) {
+            if (a instanceof BuildPriorityAction) {
+                return (BuildPriorityAction) a;
+            }
+        }
+        return null;
+    }
+
+}
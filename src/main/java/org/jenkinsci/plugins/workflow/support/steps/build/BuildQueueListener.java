@@ -14,7 +14,17 @@ public class BuildQueueListener extends QueueListener {
     public void onLeft(Queue.LeftItem li) {
         if(li.isCancelled()){
             for (BuildTriggerAction.Trigger trigger : BuildTriggerAction.triggersFor(li)) {
-                trigger.context.onFailure(new AbortException("Build of " + li.task.getFullDisplayName() + " was cancelled"));
+                AbortException failure = new AbortException("Build of " + li.task.getFullDisplayName() + " was cancelled");
+                if (trigger.key != null) {
+                    BuildAllStepExecution.failed(trigger.context, trigger.key, failure);
+                    continue;
+                }
+                BuildTriggerRegistry.Entry entry = BuildTriggerRegistry.get(trigger.context);
+                if (entry != null && entry.execution != null) {
+                    entry.execution.leftQueue();
+                }
+                BuildTriggerRegistry.remove(trigger.context);
+                trigger.context.onFailure(failure);
             }
         }
     }
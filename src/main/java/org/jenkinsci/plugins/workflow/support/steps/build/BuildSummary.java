@@ -0,0 +1,128 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Result;
+import hudson.model.Run;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.Whitelisted;
+
+/**
+ * What {@code build} and {@code waitForBuild} return with {@code returnMode: 'SUMMARY'}:
+ * a few facts about the finished build, copied when it completes.
+ * Unlike {@link RunWrapper} it never loads the build again, and it is small to keep in the program state.
+ */
+public final class BuildSummary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = Logger.getLogger(BuildSummary.class.getName());
+
+    /** What a step returns once the build it waited for completes. */
+    public enum ReturnMode {
+        /** A {@link RunWrapper}, giving access to anything about the build. */
+        RUN,
+        /** A {@link BuildSummary}. */
+        SUMMARY
+    }
+
+    private final String fullProjectName;
+    private final int number;
+    private final String result;
+    private final long duration;
+    private final String url;
+    private final Map<String, String> buildVariables;
+
+    private BuildSummary(Run<?, ?> run, Map<String, String> buildVariables) {
+        fullProjectName = run.getParent().getFullName();
+        number = run.getNumber();
+        Result r = run.getResult();
+        result = r != null ? r.toString() : null;
+        duration = run.getDuration();
+        url = run.getUrl();
+        this.buildVariables = buildVariables;
+    }
+
+    /**
+     * Computes what to pass to {@link org.jenkinsci.plugins.workflow.steps.StepContext#onSuccess}.
+     * @param summaryVariables null to return a {@link RunWrapper}, else the names of build variables to include in a summary
+     */
+    static @NonNull Object of(@NonNull Run<?, ?> run, @CheckForNull Collection<String> summaryVariables) {
+        if (summaryVariables == null) {
+            return new RunWrapper(run, false);
+        }
+        Map<String, String> variables = new TreeMap<>();
+        if (!summaryVariables.isEmpty()) {
+            try {
+                Map<String, String> all = new RunWrapper(run, false).getBuildVariables();
+                for (String name : summaryVariables) {
+                    String value = all.get(name);
+                    if (value != null) {
+                        variables.put(name, value);
+                    }
+                }
+            } catch (Exception x) {
+                LOGGER.log(Level.WARNING, "could not get build variables of " + run, x);
+            }
+        }
+        return new BuildSummary(run, variables);
+    }
+
+    @Whitelisted
+    public @NonNull String getFullProjectName() {
+        return fullProjectName;
+    }
+
+    @Whitelisted
+    public int getNumber() {
+        return number;
+    }
+
+    /** As for {@link RunWrapper#getResult}. */
+    @Whitelisted
+    public @CheckForNull String getResult() {
+        return result;
+    }
+
+    @Whitelisted
+    public long getDuration() {
+        return duration;
+    }
+
+    /** {@link Run#getExternalizableId}, as accepted by {@code waitForBuild}. */
+    @Whitelisted
+    public @NonNull String getExternalizableId() {
+        return fullProjectName + '#' + number;
+    }
+
+    /** Relative to the root of Jenkins, like {@link Run#getUrl}. */
+    @Whitelisted
+    public @NonNull String getUrl() {
+        return url;
+    }
+
+    @Whitelisted
+    public @CheckForNull String getAbsoluteUrl() {
+        String root = Jenkins.get().getRootUrl();
+        return root != null ? root + url : null;
+    }
+
+    /** Those build variables requested by {@code summaryVariables} which the build had. */
+    @Whitelisted
+    public @NonNull Map<String, String> getBuildVariables() {
+        return Collections.unmodifiableMap(buildVariables);
+    }
+
+    @Override
+    public String toString() {
+        return fullProjectName + " #" + number + ": " + result;
+    }
+
+}
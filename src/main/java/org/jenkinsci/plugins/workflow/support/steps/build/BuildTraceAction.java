@@ -0,0 +1,131 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.InvisibleAction;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+import java.util.concurrent.ThreadLocalRandom;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+
+/**
+ * Places a build in a trace of the chain of builds triggered by {@code build} and {@code buildAll} steps,
+ * so that where the time of the whole chain went can be worked out from exported {@link BuildTraceSpan}s
+ * without loading every build in it.
+ * Attached to each triggered build when it is scheduled, and to the first build of a chain when it triggers something.
+ * The span of a triggered build is derived from the span of its upstream build and the {@link FlowNode#getId} of the step,
+ * so it can be recomputed from either end.
+ *
+ * @see BuildUpstreamCause
+ */
+public final class BuildTraceAction extends InvisibleAction {
+
+    private final String traceId;
+    private final String spanId;
+    @CheckForNull
+    private final String parentSpanId;
+    /** When the build was requested, or zero for the first build of a chain, whose time in the queue is not known. */
+    private final long requestedAt;
+
+    private BuildTraceAction(@NonNull String traceId, @NonNull String spanId, @CheckForNull String parentSpanId, long requestedAt) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.requestedAt = requestedAt;
+    }
+
+    /** Identifies the whole chain, as 32 hexadecimal digits. */
+    public @NonNull String getTraceId() {
+        return traceId;
+    }
+
+    /** Identifies the run of this build, as 16 hexadecimal digits. */
+    public @NonNull String getSpanId() {
+        return spanId;
+    }
+
+    /** The span of the upstream build, or null for the first build of a chain. */
+    public @CheckForNull String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    /** When the upstream step asked for this build, or zero for the first build of a chain. */
+    public long getRequestedAt() {
+        return requestedAt;
+    }
+
+    /** Span of the time this build spent waiting to start. */
+    public @NonNull String getQueueSpanId() {
+        return derive(spanId, "queue");
+    }
+
+    /**
+     * Creates the action for a build about to be triggered from a step, starting a trace in the upstream build if need be.
+     * @param discriminator distinguishes the builds triggered by one step, if it may trigger several
+     */
+    static @NonNull BuildTraceAction child(@NonNull Run<?, ?> upstream, @NonNull FlowNode node, @CheckForNull String discriminator) {
+        return child(upstream, node, discriminator, System.currentTimeMillis());
+    }
+
+    /**
+     * Like {@link #child(Run, FlowNode, String)} for a build requested earlier than it is scheduled,
+     * so that its queue span includes the wait.
+     * @param requestedAt when the step asked for the build
+     */
+    static @NonNull BuildTraceAction child(@NonNull Run<?, ?> upstream, @NonNull FlowNode node, @CheckForNull String discriminator, long requestedAt) {
+        BuildTraceAction parent = of(upstream);
+        String id = discriminator == null ? node.getId() : node.getId() + '/' + discriminator;
+        return new BuildTraceAction(parent.traceId, derive(parent.spanId, id), parent.spanId, requestedAt);
+    }
+
+    private static @NonNull BuildTraceAction of(@NonNull Run<?, ?> run) {
+        BuildTraceAction action = run.getAction(BuildTraceAction.class);
+        if (action == null) {
+            synchronized (DownstreamBuildAction.lockFor(run)) {
+                action = run.getAction(BuildTraceAction.class);
+                if (action == null) {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    action = new BuildTraceAction(hex(random.nextLong()) + hex(random.nextLong()), hex(random.nextLong()), null, 0);
+                    run.addAction(action);
+                    UpstreamRunSaver.markDirty(run);
+                }
+            }
+        }
+        return action;
+    }
+
+    private static @NonNull String derive(@NonNull String spanId, @NonNull String id) {
+        return Util.getDigestOf(spanId + '/' + id).substring(0, 16);
+    }
+
+    private static @NonNull String hex(long value) {
+        return String.format("%016x", value);
+    }
+
+    /** Exports the spans of each traced build once it is finalized. */
+    @Extension
+    public static final class SpanListener extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onFinalized(Run<?, ?> run) {
+            BuildTraceAction action = run.getAction(BuildTraceAction.class);
+            if (action == null) {
+                return;
+            }
+            String job = run.getParent().getFullName();
+            long startedAt = run.getStartTimeInMillis();
+            Result result = run.getResult();
+            if (action.requestedAt != 0) {
+                BuildTraceExporter.fire(new BuildTraceSpan(action.traceId, action.getQueueSpanId(), action.parentSpanId,
+                        BuildTraceSpan.Kind.QUEUE, job, run.getNumber(), action.requestedAt, Math.max(action.requestedAt, startedAt), null));
+            }
+            BuildTraceExporter.fire(new BuildTraceSpan(action.traceId, action.spanId, action.parentSpanId,
+                    BuildTraceSpan.Kind.RUN, job, run.getNumber(), startedAt, startedAt + run.getDuration(), result != null ? result.toString() : null));
+        }
+
+    }
+
+}
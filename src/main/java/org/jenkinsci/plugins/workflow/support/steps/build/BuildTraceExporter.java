@@ -0,0 +1,34 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Receives the {@link BuildTraceSpan}s of builds in chains triggered by {@code build} and {@code buildAll} steps,
+ * for example to send them to a tracing system.
+ * {@link BuildTraceFileExporter} is the built-in implementation.
+ */
+public abstract class BuildTraceExporter implements ExtensionPoint {
+
+    private static final Logger LOGGER = Logger.getLogger(BuildTraceExporter.class.getName());
+
+    /**
+     * Called as a build is finalized, for the time it spent in the queue and then for its run.
+     * Should return quickly.
+     */
+    public abstract void export(@NonNull BuildTraceSpan span);
+
+    static void fire(@NonNull BuildTraceSpan span) {
+        for (BuildTraceExporter e : ExtensionList.lookup(BuildTraceExporter.class)) {
+            try {
+                e.export(span);
+            } catch (RuntimeException x) {
+                LOGGER.log(Level.WARNING, null, x);
+            }
+        }
+    }
+
+}
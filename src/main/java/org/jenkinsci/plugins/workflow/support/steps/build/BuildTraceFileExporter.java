@@ -0,0 +1,150 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.init.Terminator;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import net.sf.json.JSONObject;
+
+/**
+ * Appends every {@link BuildTraceSpan} as a line of JSON to {@code $JENKINS_HOME/logs/build-step-traces/<date>.jsonl},
+ * one file per UTC day, kept for {@link #RETENTION_DAYS}.
+ * Lines are written in batches on a background thread, and when Jenkins shuts down.
+ * Spans of one trace may be spread over several days and are in the order builds finished,
+ * so join them on {@code traceId} and {@code parentSpanId} to reconstruct a chain.
+ */
+@Extension
+public final class BuildTraceFileExporter extends BuildTraceExporter {
+
+    private static final Logger LOGGER = Logger.getLogger(BuildTraceFileExporter.class.getName());
+
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for tests and script console")
+    static boolean DISABLED = SystemProperties.getBoolean(BuildTraceFileExporter.class.getName() + ".DISABLED");
+
+    /** Days of files to keep, including today's. */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for tests and script console")
+    static int RETENTION_DAYS = SystemProperties.getInteger(BuildTraceFileExporter.class.getName() + ".RETENTION_DAYS", 7);
+
+    /** Day of the file last written, so that old files are only looked for once a day. */
+    private LocalDate day;
+
+    /** Spans not yet written, as lines of JSON each paired with the day it was exported. */
+    private List<Map.Entry<LocalDate, String>> pending = new ArrayList<>();
+    private boolean flushScheduled;
+
+    private final Object fileLock = new Object();
+
+    static @NonNull Path directory() {
+        return Jenkins.get().getRootDir().toPath().resolve("logs").resolve("build-step-traces");
+    }
+
+    /** Only formats the span; it is written on a background thread, so that finalizing a build does not wait for the disk. */
+    @Override
+    public void export(@NonNull BuildTraceSpan span) {
+        if (DISABLED) {
+            return;
+        }
+        JSONObject json = new JSONObject();
+        json.put("traceId", span.getTraceId());
+        json.put("spanId", span.getSpanId());
+        if (span.getParentSpanId() != null) {
+            json.put("parentSpanId", span.getParentSpanId());
+        }
+        json.put("kind", span.getKind().name().toLowerCase(Locale.ROOT));
+        json.put("job", span.getJobFullName());
+        json.put("build", span.getBuildNumber());
+        json.put("start", span.getStart());
+        json.put("end", span.getEnd());
+        if (span.getResult() != null) {
+            json.put("result", span.getResult());
+        }
+        Map.Entry<LocalDate, String> line = new AbstractMap.SimpleImmutableEntry<>(LocalDate.now(ZoneOffset.UTC), json.toString());
+        synchronized (this) {
+            pending.add(line);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                Timer.get().submit(this::flush);
+            }
+        }
+    }
+
+    /** Appends pending lines, opening each day's file once per batch. */
+    void flush() {
+        synchronized (fileLock) {
+            List<Map.Entry<LocalDate, String>> batch;
+            synchronized (this) {
+                flushScheduled = false;
+                batch = pending;
+                pending = new ArrayList<>();
+            }
+            int i = 0;
+            while (i < batch.size()) {
+                LocalDate today = batch.get(i).getKey();
+                int end = i + 1;
+                while (end < batch.size() && batch.get(end).getKey().equals(today)) {
+                    end++;
+                }
+                write(today, batch.subList(i, end));
+                i = end;
+            }
+        }
+    }
+
+    @Terminator
+    public static void flushAtShutdown() {
+        for (BuildTraceFileExporter exporter : ExtensionList.lookup(BuildTraceFileExporter.class)) {
+            exporter.flush();
+        }
+    }
+
+    private void write(@NonNull LocalDate today, @NonNull List<Map.Entry<LocalDate, String>> lines) {
+        Path dir = directory();
+        try {
+            Files.createDirectories(dir);
+            if (!today.equals(day)) {
+                day = today;
+                deleteBefore(dir, today.minusDays(Math.max(RETENTION_DAYS, 1) - 1));
+            }
+            try (Writer w = Files.newBufferedWriter(dir.resolve(today + ".jsonl"), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (Map.Entry<LocalDate, String> line : lines) {
+                    w.write(line.getValue());
+                    w.write('\n');
+                }
+            }
+        } catch (IOException x) {
+            LOGGER.log(Level.WARNING, "Could not export " + lines.size() + " spans", x);
+        }
+    }
+
+    private static void deleteBefore(@NonNull Path dir, @NonNull LocalDate oldest) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.jsonl")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.substring(0, name.length() - ".jsonl".length()).compareTo(oldest.toString()) < 0) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * One interval in the life of a traced build, as passed to {@link BuildTraceExporter}s.
+ * Times are in milliseconds since the epoch.
+ *
+ * @see BuildTraceAction
+ */
+public final class BuildTraceSpan {
+
+    public enum Kind {
+        /** From the build being requested by the upstream step to it starting. */
+        QUEUE,
+        /** From the build starting to it completing. */
+        RUN
+    }
+
+    private final String traceId;
+    private final String spanId;
+    private final String parentSpanId;
+    private final Kind kind;
+    private final String jobFullName;
+    private final int buildNumber;
+    private final long start;
+    private final long end;
+    private final String result;
+
+    BuildTraceSpan(@NonNull String traceId, @NonNull String spanId, @CheckForNull String parentSpanId, @NonNull Kind kind,
+                   @NonNull String jobFullName, int buildNumber, long start, long end, @CheckForNull String result) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.kind = kind;
+        this.jobFullName = jobFullName;
+        this.buildNumber = buildNumber;
+        this.start = start;
+        this.end = end;
+        this.result = result;
+    }
+
+    public @NonNull String getTraceId() {
+        return traceId;
+    }
+
+    public @NonNull String getSpanId() {
+        return spanId;
+    }
+
+    /** Span of the upstream build, or null for the first build of a chain. */
+    public @CheckForNull String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public @NonNull Kind getKind() {
+        return kind;
+    }
+
+    public @NonNull String getJobFullName() {
+        return jobFullName;
+    }
+
+    public int getBuildNumber() {
+        return buildNumber;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    /** Result of the build, for {@link Kind#RUN} spans only. */
+    public @CheckForNull String getResult() {
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + jobFullName + " #" + buildNumber + " " + traceId + "/" + spanId + " (" + (end - start) + "ms)";
+    }
+
+}
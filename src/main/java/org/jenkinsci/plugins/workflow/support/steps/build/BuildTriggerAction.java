@@ -1,18 +1,20 @@
 package org.jenkinsci.plugins.workflow.support.steps.build;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.model.Action;
 import hudson.model.Actionable;
 import hudson.model.InvisibleAction;
 import hudson.model.Queue;
+import hudson.model.Run;
 import hudson.model.queue.FoldableAction;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jenkinsci.plugins.workflow.steps.StepContext;
 
-@SuppressWarnings("SynchronizeOnNonFinalField")
 class BuildTriggerAction extends InvisibleAction implements FoldableAction {
 
     private static final Logger LOGGER = Logger.getLogger(BuildTriggerAction.class.getName());
@@ -31,43 +33,109 @@ class BuildTriggerAction extends InvisibleAction implements FoldableAction {
         final boolean propagate;
         final boolean waitForStart;
 
+        /** For {@link BuildAllStep}, identifies which of the step's builds this is; null for {@link BuildTriggerStep}. */
+        @CheckForNull
+        final String key;
+
         /** Record of cancellation cause passed to {@link BuildTriggerStepExecution#stop}, if any. */
         @CheckForNull
         Throwable interruption;
 
+        /** When the step started scheduling the build, or zero if unknown (older records). */
+        final long requestedAt;
+
+        /** When the build was put in the queue, or zero if not yet or unknown. */
+        volatile long scheduledAt;
+
+        /** If set, the step returns a {@link BuildSummary} with these build variables rather than a {@link RunWrapper}. */
+        @CheckForNull
+        List<String> summaryVariables;
+
+        /** Whether the build holds one of the slots counted by {@link InFlightLimits}. */
+        boolean throttled;
+
         Trigger(StepContext context, boolean propagate, boolean waitForStart) {
+            this(context, propagate, waitForStart, null);
+        }
+
+        Trigger(StepContext context, boolean propagate, boolean waitForStart, @CheckForNull String key) {
             this.context = context;
             this.propagate = propagate;
             this.waitForStart = waitForStart;
+            this.key = key;
+            this.requestedAt = System.currentTimeMillis();
+        }
+
+        void scheduled() {
+            scheduledAt = System.currentTimeMillis();
+        }
+
+        /**
+         * Computes phase timings once the result is about to be passed back to the step.
+         * @param finalizedAt when {@link BuildTriggerListener#onFinalized} was called
+         * @return null if the trigger predates timing information
+         */
+        @CheckForNull BuildTriggerLatency latency(@NonNull Run<?, ?> run, long finalizedAt) {
+            if (requestedAt == 0 || scheduledAt == 0) {
+                return null;
+            }
+            long startedAt = run.getStartTimeInMillis();
+            return new BuildTriggerLatency(run.getParent().getFullName(), run.getNumber(),
+                    scheduledAt - requestedAt, Math.max(0, startedAt - scheduledAt), finalizedAt - startedAt, System.currentTimeMillis() - finalizedAt);
         }
 
     }
 
-    private /* final */ List<Trigger> triggers;
+    /**
+     * Copy-on-write snapshot: once published, a list is never modified, so readers need neither locking nor copying.
+     * Kept as an {@link ArrayList} for the sake of the serial form.
+     */
+    private volatile List<Trigger> triggers;
 
     BuildTriggerAction(StepContext context, boolean propagate, boolean waitForStart) {
-        triggers = new ArrayList<>();
-        triggers.add(new Trigger(context, propagate, waitForStart));
+        this(new Trigger(context, propagate, waitForStart));
+    }
+
+    BuildTriggerAction(Trigger trigger) {
+        List<Trigger> triggers = new ArrayList<>(1);
+        triggers.add(trigger);
+        this.triggers = triggers;
     }
 
     private Object readResolve() {
         if (triggers == null) {
-            triggers = new ArrayList<>();
+            List<Trigger> triggers = new ArrayList<>(1);
             triggers.add(new Trigger(context, propagate != null ? propagate : /* old serialized record */ true, false));
+            this.triggers = triggers;
             context = null;
             propagate = null;
         }
         return this;
     }
 
-    static Iterable<Trigger> triggersFor(Actionable actionable) {
-        List<Trigger> triggers = new ArrayList<>();
-        for (BuildTriggerAction action : actionable.getActions(BuildTriggerAction.class)) {
-            synchronized (action.triggers) {
-                triggers.addAll(action.triggers);
+    /**
+     * Finds all triggers recorded on a queue item or build.
+     * @return a read-only snapshot, which callers must not modify
+     */
+    static List<Trigger> triggersFor(Actionable actionable) {
+        List<Trigger> result = Collections.emptyList();
+        boolean copied = false;
+        // Not getActions(Class), which also consults TransientActionFactory and copies.
+        for (Action a : actionable.getActions()) {
+            if (a instanceof BuildTriggerAction) {
+                List<Trigger> triggers = ((BuildTriggerAction) a).triggers;
+                if (result.isEmpty()) {
+                    result = triggers;
+                } else if (!triggers.isEmpty()) {
+                    if (!copied) {
+                        result = new ArrayList<>(result);
+                        copied = true;
+                    }
+                    result.addAll(triggers);
+                }
             }
         }
-        return triggers;
+        return result;
     }
 
     @Override public void foldIntoExisting(Queue.Item item, Queue.Task owner, List<Action> otherActions) {
@@ -76,11 +144,108 @@ class BuildTriggerAction extends InvisibleAction implements FoldableAction {
         if (existing == null) {
             item.addAction(this);
         } else {
-            synchronized (existing.triggers) {
-                existing.triggers.addAll(triggers);
-            }
+            existing.addAll(triggers);
         }
         LOGGER.log(Level.FINE, "coalescing actions for {0}", item);
     }
 
+    /**
+     * Withdraws the trigger of a step, for example when it has stopped waiting for the build.
+     * @return whether there was such a trigger
+     */
+    boolean remove(StepContext context) {
+        return take(context, null) != null;
+    }
+
+    /**
+     * Like {@link #remove(StepContext)} for one of the builds of a {@link BuildAllStep}.
+     * @param key as in {@link Trigger#key}
+     */
+    boolean remove(StepContext context, @NonNull String key) {
+        return take(context, key) != null;
+    }
+
+    /** @param key if not null, only a trigger with this {@link Trigger#key} is taken */
+    private synchronized @CheckForNull Trigger take(StepContext context, @CheckForNull String key) {
+        Trigger taken = null;
+        List<Trigger> updated = new ArrayList<>(triggers.size());
+        for (Trigger trigger : triggers) {
+            if (taken == null && context.equals(trigger.context) && (key == null || key.equals(trigger.key))) {
+                taken = trigger;
+            } else {
+                updated.add(trigger);
+            }
+        }
+        if (taken != null) {
+            triggers = updated;
+        }
+        return taken;
+    }
+
+    private synchronized boolean remove(Trigger trigger) {
+        List<Trigger> updated = new ArrayList<>(triggers);
+        if (!updated.remove(trigger)) {
+            return false;
+        }
+        triggers = updated;
+        return true;
+    }
+
+    /**
+     * Removes and returns the trigger of one step from a build, so that only one caller reports the build to that step.
+     * @return the trigger, or null if there was none (perhaps because it was already reported)
+     */
+    static @CheckForNull Trigger take(Actionable actionable, StepContext context) {
+        return take(actionable, context, null);
+    }
+
+    /**
+     * Like {@link #take(Actionable, StepContext)} for one of the builds of a {@link BuildAllStep}.
+     * @param key as in {@link Trigger#key}, or null for any trigger of the step
+     */
+    static @CheckForNull Trigger take(Actionable actionable, StepContext context, @CheckForNull String key) {
+        for (Action a : actionable.getActions()) {
+            if (a instanceof BuildTriggerAction) {
+                BuildTriggerAction action = (BuildTriggerAction) a;
+                Trigger trigger = action.take(context, key);
+                if (trigger != null) {
+                    dropIfEmpty(actionable, action);
+                    return trigger;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Like {@link #take(Actionable, StepContext)} for a particular trigger,
+     * which stays on the build until whoever reports it is about to do so.
+     * @return whether the trigger was still there, in which case the caller must report it
+     */
+    static boolean take(Actionable actionable, Trigger trigger) {
+        for (Action a : actionable.getActions()) {
+            if (a instanceof BuildTriggerAction) {
+                BuildTriggerAction action = (BuildTriggerAction) a;
+                if (action.remove(trigger)) {
+                    dropIfEmpty(actionable, action);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void dropIfEmpty(Actionable actionable, BuildTriggerAction action) {
+        if (action.triggers.isEmpty()) {
+            actionable.removeAction(action);
+        }
+    }
+
+    synchronized void addAll(List<Trigger> added) {
+        List<Trigger> updated = new ArrayList<>(triggers.size() + added.size());
+        updated.addAll(triggers);
+        updated.addAll(added);
+        triggers = updated;
+    }
+
 }
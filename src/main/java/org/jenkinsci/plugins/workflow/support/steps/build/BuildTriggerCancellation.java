@@ -0,0 +1,154 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.Queue;
+import hudson.model.Result;
+import hudson.model.Run;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+
+/**
+ * Cancels downstream builds of {@code build} steps which are not tracked in {@link BuildTriggerRegistry}.
+ * Requests arriving within {@link #DELAY} of each other, typically from the branches of one aborted {@code parallel},
+ * are resolved with a single pass over the queue and the executors.
+ */
+final class BuildTriggerCancellation {
+
+    private static final Logger LOGGER = Logger.getLogger(BuildTriggerCancellation.class.getName());
+
+    /** How long to wait for further requests before scanning, in milliseconds. */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for tests and script console")
+    static long DELAY = SystemProperties.getLong(BuildTriggerCancellation.class.getName() + ".DELAY", 100L);
+
+    private static final List<Request> pending = new ArrayList<>();
+    private static boolean flushScheduled;
+    private static final AtomicLong scans = new AtomicLong();
+
+    private record Request(@NonNull StepContext context, @NonNull Throwable cause) {}
+
+    private BuildTriggerCancellation() {}
+
+    /**
+     * Asynchronously cancels or interrupts the downstream build of a step.
+     * If none is found, the step is failed with the cause instead.
+     */
+    static void stop(@NonNull StepContext context, @NonNull Throwable cause) {
+        synchronized (pending) {
+            pending.add(new Request(context, cause));
+            if (!flushScheduled) {
+                flushScheduled = true;
+                Timer.get().schedule(BuildTriggerCancellation::flush, DELAY, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /** Number of passes over the queue and executors made so far. */
+    static long getScanCount() {
+        return scans.get();
+    }
+
+    /** Receives the downstream work found by {@link #scan}. */
+    interface Visitor {
+
+        void queued(@NonNull Queue.Item item, @NonNull StepContext context);
+
+        void running(@NonNull Executor executor, @NonNull Run<?, ?> run, @NonNull BuildTriggerAction.Trigger trigger);
+
+    }
+
+    /**
+     * Makes one pass over the queue and the executors, reporting the items and builds triggered by any of {@code contexts}.
+     * Must be called with the queue locked.
+     */
+    static void scan(@NonNull Jenkins jenkins, @NonNull Set<StepContext> contexts, @NonNull Visitor visitor) {
+        for (Queue.Item i : jenkins.getQueue().getItems()) {
+            for (BuildTriggerAction.Trigger trigger : BuildTriggerAction.triggersFor(i)) {
+                if (contexts.contains(trigger.context)) {
+                    visitor.queued(i, trigger.context);
+                }
+            }
+        }
+        for (Computer c : jenkins.getComputers()) {
+            for (Executor e : c.getAllExecutors()) {
+                Queue.Executable exec = e.getCurrentExecutable();
+                if (exec instanceof Run) {
+                    Run<?, ?> run = (Run<?, ?>) exec;
+                    for (BuildTriggerAction.Trigger trigger : BuildTriggerAction.triggersFor(run)) {
+                        if (contexts.contains(trigger.context)) {
+                            visitor.running(e, run, trigger);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void flush() {
+        Map<StepContext, Request> requests = new HashMap<>();
+        synchronized (pending) {
+            for (Request request : pending) {
+                requests.putIfAbsent(request.context(), request);
+            }
+            pending.clear();
+            flushScheduled = false;
+        }
+        Set<StepContext> found = new HashSet<>();
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins != null) {
+            List<Run<?, ?>> interruptedRuns = new ArrayList<>();
+            Queue q = jenkins.getQueue();
+            Queue.withLock(() -> {
+                scans.incrementAndGet();
+                scan(jenkins, requests.keySet(), new Visitor() {
+                    @Override
+                    public void queued(Queue.Item item, StepContext context) {
+                        // BuildQueueListener will report the failure of cancelled items.
+                        q.cancel(item);
+                        found.add(context);
+                    }
+
+                    @Override
+                    public void running(Executor executor, Run<?, ?> run, BuildTriggerAction.Trigger trigger) {
+                        // BuildTriggerListener will report the failure of interrupted builds.
+                        Throwable cause = requests.get(trigger.context).cause();
+                        executor.interrupt(Result.ABORTED, new BuildTriggerCancelledCause(cause));
+                        trigger.interruption = cause;
+                        interruptedRuns.add(run);
+                        found.add(trigger.context);
+                    }
+                });
+            });
+            for (Run<?, ?> run : interruptedRuns) {
+                try {
+                    run.save();
+                } catch (IOException x) {
+                    LOGGER.log(Level.WARNING, "failed to save interrupt cause on " + run, x);
+                }
+            }
+        }
+        for (Request request : requests.values()) {
+            if (!found.contains(request.context())) {
+                BuildTriggerRegistry.remove(request.context());
+                request.context().onFailure(request.cause());
+            }
+        }
+        LOGGER.log(Level.FINE, "cancelled {0} of {1} requested downstream builds", new Object[] {found.size(), requests.size()});
+    }
+
+}
@@ -0,0 +1,86 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+import java.util.Locale;
+import org.jenkinsci.plugins.workflow.actions.PersistentAction;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+
+/**
+ * How long each phase of one downstream build awaited by {@code build}, {@code buildAll}, {@code waitForBuild} or {@code waitForBuilds}
+ * took, in milliseconds. Passed to {@link BuildTriggerLatencyListener}s.
+ * Also attached to the {@link FlowNode} of a {@code build} or {@code waitForBuild} step, which waits for one build.
+ * Not attached for {@code buildAll} or {@code waitForBuilds}, whose node would otherwise accumulate one record per build;
+ * their timings are only available from listeners.
+ */
+public final class BuildTriggerLatency extends InvisibleAction implements PersistentAction {
+
+    /** Value of a phase which the step did not observe, such as {@link Phase#SCHEDULE} for {@code waitForBuild}. */
+    public static final long UNKNOWN = -1;
+
+    /** Phases of a triggered build, in order. */
+    public enum Phase {
+        /** From the step starting to the build being in the queue. */
+        SCHEDULE,
+        /** From being in the queue to the build starting. */
+        QUEUE,
+        /** From the build starting to it being finalized. */
+        RUN,
+        /** From the build being finalized to the result being passed back to the step. */
+        DELIVERY
+    }
+
+    private final String jobFullName;
+    private final int buildNumber;
+    private final long schedule;
+    private final long queue;
+    private final long run;
+    private final long delivery;
+
+    BuildTriggerLatency(@NonNull String jobFullName, int buildNumber, long schedule, long queue, long run, long delivery) {
+        this.jobFullName = jobFullName;
+        this.buildNumber = buildNumber;
+        this.schedule = schedule;
+        this.queue = queue;
+        this.run = run;
+        this.delivery = delivery;
+    }
+
+    public @NonNull String getJobFullName() {
+        return jobFullName;
+    }
+
+    public int getBuildNumber() {
+        return buildNumber;
+    }
+
+    /** @return the duration, or {@link #UNKNOWN} */
+    public long get(@NonNull Phase phase) {
+        return switch (phase) {
+            case SCHEDULE -> schedule;
+            case QUEUE -> queue;
+            case RUN -> run;
+            case DELIVERY -> delivery;
+        };
+    }
+
+    /** For a build the step waited on but did not trigger, so only knows from when it started. */
+    static @NonNull BuildTriggerLatency waited(@NonNull Run<?, ?> run, long finalizedAt) {
+        return new BuildTriggerLatency(run.getParent().getFullName(), run.getNumber(),
+                UNKNOWN, UNKNOWN, finalizedAt - run.getStartTimeInMillis(), System.currentTimeMillis() - finalizedAt);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder(jobFullName).append(" #").append(buildNumber).append(':');
+        for (Phase phase : Phase.values()) {
+            long millis = get(phase);
+            if (millis != UNKNOWN) {
+                b.append(' ').append(phase.name().toLowerCase(Locale.ROOT)).append(' ').append(millis).append("ms");
+            }
+        }
+        return b.toString();
+    }
+
+}
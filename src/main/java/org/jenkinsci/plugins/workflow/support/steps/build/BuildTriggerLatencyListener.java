@@ -0,0 +1,35 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Notified with the phase timings of every downstream build whose result is passed back to a
+ * {@code build}, {@code buildAll}, {@code waitForBuild} or {@code waitForBuilds} step,
+ * for example to export them to a monitoring system.
+ * {@link BuildTriggerLatencyStatistics} is the built-in implementation.
+ */
+public abstract class BuildTriggerLatencyListener implements ExtensionPoint {
+
+    private static final Logger LOGGER = Logger.getLogger(BuildTriggerLatencyListener.class.getName());
+
+    /**
+     * Called just before the result is passed to the step, on a background thread.
+     * Should return quickly, since other steps may be waiting behind it.
+     */
+    public abstract void onDelivered(@NonNull BuildTriggerLatency latency);
+
+    static void fire(@NonNull BuildTriggerLatency latency) {
+        for (BuildTriggerLatencyListener l : ExtensionList.lookup(BuildTriggerLatencyListener.class)) {
+            try {
+                l.onDelivered(latency);
+            } catch (RuntimeException x) {
+                LOGGER.log(Level.WARNING, null, x);
+            }
+        }
+    }
+
+}
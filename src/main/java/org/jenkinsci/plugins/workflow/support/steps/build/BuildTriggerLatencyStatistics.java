@@ -0,0 +1,166 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.Item;
+import hudson.model.RootAction;
+import hudson.model.listeners.ItemListener;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+import org.kohsuke.stapler.verb.GET;
+
+/**
+ * Per-job histograms of {@link BuildTriggerLatency}, served in the Prometheus text format from {@code /build-step-latency/}
+ * to users with {@link Jenkins#SYSTEM_READ}, along with the state of {@link CompletionDispatcher}.
+ */
+@Extension
+public final class BuildTriggerLatencyStatistics extends BuildTriggerLatencyListener implements RootAction {
+
+    /** Upper bounds of the histogram buckets, in milliseconds, other than the implicit infinite one. */
+    static final long[] BUCKETS = {10, 100, 1_000, 10_000, 60_000, 600_000, 3_600_000};
+
+    /** Counts of observations in one phase of one job. */
+    static final class Histogram {
+
+        final LongAdder[] counts = new LongAdder[BUCKETS.length + 1];
+        final LongAdder sum = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        void observe(long millis) {
+            int i = 0;
+            while (i < BUCKETS.length && millis > BUCKETS[i]) {
+                i++;
+            }
+            counts[i].increment();
+            sum.add(millis);
+        }
+
+        long count() {
+            long count = 0;
+            for (LongAdder c : counts) {
+                count += c.sum();
+            }
+            return count;
+        }
+
+    }
+
+    private final Map<String, Map<BuildTriggerLatency.Phase, Histogram>> histograms = new ConcurrentHashMap<>();
+
+    static @NonNull BuildTriggerLatencyStatistics get() {
+        return ExtensionList.lookupSingleton(BuildTriggerLatencyStatistics.class);
+    }
+
+    @Override
+    public void onDelivered(@NonNull BuildTriggerLatency latency) {
+        Map<BuildTriggerLatency.Phase, Histogram> phases = histograms.computeIfAbsent(latency.getJobFullName(), k -> {
+            Map<BuildTriggerLatency.Phase, Histogram> m = new EnumMap<>(BuildTriggerLatency.Phase.class);
+            for (BuildTriggerLatency.Phase phase : BuildTriggerLatency.Phase.values()) {
+                m.put(phase, new Histogram());
+            }
+            return m;
+        });
+        for (Map.Entry<BuildTriggerLatency.Phase, Histogram> entry : phases.entrySet()) {
+            long millis = latency.get(entry.getKey());
+            if (millis != BuildTriggerLatency.UNKNOWN) {
+                entry.getValue().observe(millis);
+            }
+        }
+    }
+
+    /** Number of downstream builds recorded for a job. */
+    long getCount(@NonNull String jobFullName) {
+        Map<BuildTriggerLatency.Phase, Histogram> phases = histograms.get(jobFullName);
+        return phases == null ? 0 : phases.get(BuildTriggerLatency.Phase.RUN).count();
+    }
+
+    @Override
+    public @CheckForNull String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public @CheckForNull String getDisplayName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return "build-step-latency";
+    }
+
+    @GET
+    public void doIndex(StaplerRequest2 req, StaplerResponse2 rsp) throws IOException {
+        Jenkins.get().checkPermission(Jenkins.SYSTEM_READ);
+        rsp.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+        PrintWriter w = rsp.getWriter();
+        w.println("# HELP build_step_phase_milliseconds Time spent by downstream builds triggered from Pipeline in each phase.");
+        w.println("# TYPE build_step_phase_milliseconds histogram");
+        for (Map.Entry<String, Map<BuildTriggerLatency.Phase, Histogram>> job : new TreeMap<>(histograms).entrySet()) {
+            for (Map.Entry<BuildTriggerLatency.Phase, Histogram> phase : job.getValue().entrySet()) {
+                String labels = "job=\"" + escape(job.getKey()) + "\",phase=\"" + phase.getKey().name().toLowerCase(Locale.ROOT) + "\"";
+                Histogram h = phase.getValue();
+                long cumulative = 0;
+                for (int i = 0; i < h.counts.length; i++) {
+                    cumulative += h.counts[i].sum();
+                    String le = i < BUCKETS.length ? Long.toString(BUCKETS[i]) : "+Inf";
+                    w.println("build_step_phase_milliseconds_bucket{" + labels + ",le=\"" + le + "\"} " + cumulative);
+                }
+                w.println("build_step_phase_milliseconds_sum{" + labels + "} " + h.sum.sum());
+                w.println("build_step_phase_milliseconds_count{" + labels + "} " + cumulative);
+            }
+        }
+        w.println("# HELP build_step_completion_queue_depth Downstream build completions waiting to be delivered to Pipeline steps.");
+        w.println("# TYPE build_step_completion_queue_depth gauge");
+        w.println("build_step_completion_queue_depth " + CompletionDispatcher.getQueueDepth());
+        w.println("# HELP build_step_completion_queue_depth_max Highest number of completions waiting at once since startup.");
+        w.println("# TYPE build_step_completion_queue_depth_max gauge");
+        w.println("build_step_completion_queue_depth_max " + CompletionDispatcher.getMaxQueueDepth());
+        w.println("# HELP build_step_completion_inline_total Completions delivered on the finalizing thread because the queue was full.");
+        w.println("# TYPE build_step_completion_inline_total counter");
+        w.println("build_step_completion_inline_total " + CompletionDispatcher.getInlineCount());
+        w.println("# HELP build_step_completion_delay_milliseconds Time from a downstream build being finalized to delivery of its completion starting.");
+        w.println("# TYPE build_step_completion_delay_milliseconds summary");
+        w.println("build_step_completion_delay_milliseconds_sum " + CompletionDispatcher.getTotalLatencyMillis());
+        w.println("build_step_completion_delay_milliseconds_count " + CompletionDispatcher.getDeliveredCount());
+        w.println("# HELP build_step_completion_delay_milliseconds_max Longest such time since startup.");
+        w.println("# TYPE build_step_completion_delay_milliseconds_max gauge");
+        w.println("build_step_completion_delay_milliseconds_max " + CompletionDispatcher.getMaxLatencyMillis());
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    @Extension
+    public static final class Cleaner extends ItemListener {
+
+        @Override
+        public void onDeleted(Item item) {
+            get().histograms.remove(item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            get().histograms.remove(oldFullName);
+        }
+
+    }
+
+}
@@ -1,14 +1,15 @@
 package org.jenkinsci.plugins.workflow.support.steps.build;
 
+import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.AbortException;
 import hudson.Extension;
 import hudson.console.ModelHyperlinkNote;
 import hudson.model.Cause;
+import hudson.model.Executor;
 import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.model.listeners.RunListener;
-import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jenkins.util.Timer;
@@ -25,8 +26,20 @@ public class BuildTriggerListener extends RunListener<Run<?,?>>{
 
     @Override
     public void onStarted(Run<?, ?> run, TaskListener listener) {
+        Executor executor = Executor.currentExecutor();
         for (BuildTriggerAction.Trigger trigger : BuildTriggerAction.triggersFor(run)) {
             StepContext stepContext = trigger.context;
+            if (trigger.key != null) {
+                BuildAllStepExecution.started(stepContext, trigger.key, run);
+            } else if (trigger.waitForStart) {
+                BuildTriggerRegistry.Entry entry = stepContext != null ? BuildTriggerRegistry.get(stepContext) : null;
+                if (entry != null && entry.execution != null) {
+                    entry.execution.leftQueue();
+                }
+                BuildTriggerRegistry.remove(stepContext);
+            } else {
+                BuildTriggerRegistry.started(stepContext, run, executor);
+            }
             if (stepContext != null && stepContext.isReady()) {
                 LOGGER.log(Level.FINE, "started building {0} from #{1} in {2}", new Object[] {run, run.getQueueId(), stepContext});
                 try {
@@ -43,48 +56,113 @@ public class BuildTriggerListener extends RunListener<Run<?,?>>{
                 LOGGER.log(Level.FINE, "{0} unavailable in {1}", new Object[] {stepContext, run});
             }
         }
+        ReusableBuilds.started(run);
         Timer.get().submit(() -> updateDownstreamBuildAction(run));
     }
 
+    @Override
+    public void onCompleted(Run<?, ?> run, @NonNull TaskListener listener) {
+        ReusableBuilds.completed(run);
+    }
+
     @Override
     public void onFinalized(Run<?,?> run) {
+        UpstreamRunSaver.flush(run);
+        BuildGraphIndex.get().finalized(run);
+        long finalizedAt = System.currentTimeMillis();
         for (BuildTriggerAction.Trigger trigger : BuildTriggerAction.triggersFor(run)) {
-            if (!trigger.waitForStart) {
-                StepContext stepContext = trigger.context;
-                LOGGER.log(Level.FINE, "completing {0} for {1}", new Object[] {run, stepContext});
-                Result result = run.getResult();
-                if (result == null) { /* probably impossible */
-                    result = Result.FAILURE;
-                }
+            if (trigger.waitForStart) {
+                // Already reported when the build started.
+                BuildTriggerAction.take(run, trigger);
+            } else {
+                BuildTriggerRegistry.remove(trigger.context);
+                deliver(run, trigger, finalizedAt);
+            }
+        }
+    }
 
-                try {
-                    stepContext.get(TaskListener.class).getLogger().println("Build " + ModelHyperlinkNote.encodeTo("/" + run.getUrl(), run.getFullDisplayName()) + " completed: " + result.toString());
-                    if (trigger.propagate && result != Result.SUCCESS) {
-                        stepContext.get(FlowNode.class).addOrReplaceAction(new WarningAction(result));
-                    }
-                }  catch (Exception e) {
-                    LOGGER.log(Level.WARNING, null, e);
-                }
+    /**
+     * Reports a build to a step if {@link #onFinalized} has not already done so, as when the report was lost in a restart.
+     * @return whether the build was reported now
+     */
+    static boolean reconcile(@NonNull Run<?, ?> run, @NonNull StepContext context) {
+        for (BuildTriggerAction.Trigger trigger : BuildTriggerAction.triggersFor(run)) {
+            if (context.equals(trigger.context) && !trigger.waitForStart) {
+                BuildTriggerRegistry.remove(context);
+                deliver(run, trigger, System.currentTimeMillis());
+                return true;
+            }
+        }
+        return false;
+    }
 
-                if (!trigger.propagate || result == Result.SUCCESS) {
-                    if (trigger.interruption == null) {
-                        stepContext.onSuccess(new RunWrapper(run, false));
-                    } else {
-                        stepContext.onFailure(trigger.interruption);
-                    }
-                } else {
-                    stepContext.onFailure(new FlowInterruptedException(result, false, new DownstreamFailureCause(run)));
+    /**
+     * The trigger stays on the build until the delivery actually runs, so that if Jenkins stops first,
+     * {@code build.xml} still has it for {@link BuildTriggerReconciler}.
+     * Only whoever takes it reports the build, so it is never reported twice.
+     * A {@link BuildAllStep} trigger is also left in place while its execution has yet to resume,
+     * for {@link BuildAllStepExecution#onResume} to pick up.
+     */
+    private static void deliver(@NonNull Run<?, ?> run, @NonNull BuildTriggerAction.Trigger trigger, long finalizedAt) {
+        CompletionDispatcher.submit(trigger.context, () -> {
+            if (trigger.key != null && !BuildAllStepExecution.isRunning(trigger.context)) {
+                LOGGER.log(Level.FINE, "{0} not yet resumed to record completion of {1}", new Object[] {trigger.context, run});
+                return;
+            }
+            if (BuildTriggerAction.take(run, trigger)) {
+                completed(run, trigger, finalizedAt);
+            }
+        });
+    }
+
+    private static void completed(Run<?, ?> run, BuildTriggerAction.Trigger trigger, long finalizedAt) {
+        StepContext stepContext = trigger.context;
+        LOGGER.log(Level.FINE, "completing {0} for {1}", new Object[] {run, stepContext});
+        Result result = run.getResult();
+        if (result == null) { /* probably impossible */
+            result = Result.FAILURE;
+        }
+
+        try {
+            stepContext.get(TaskListener.class).getLogger().println("Build " + ModelHyperlinkNote.encodeTo("/" + run.getUrl(), run.getFullDisplayName()) + " completed: " + result.toString());
+            FlowNode node = stepContext.get(FlowNode.class);
+            if (trigger.propagate && result != Result.SUCCESS) {
+                node.addOrReplaceAction(new WarningAction(result));
+            }
+            BuildTriggerLatency latency = trigger.latency(run, finalizedAt);
+            if (latency != null) {
+                if (trigger.key == null) {
+                    node.addOrReplaceAction(latency);
                 }
+                BuildTriggerLatencyListener.fire(latency);
+            }
+        }  catch (Exception e) {
+            LOGGER.log(Level.WARNING, null, e);
+        }
+
+        if (trigger.key != null) {
+            BuildAllStepExecution.completed(stepContext, trigger.key, run);
+        } else if (!trigger.propagate || result == Result.SUCCESS) {
+            if (trigger.interruption == null) {
+                stepContext.onSuccess(BuildSummary.of(run, trigger.summaryVariables));
+            } else {
+                stepContext.onFailure(trigger.interruption);
             }
+        } else {
+            stepContext.onFailure(new FlowInterruptedException(result, false, new DownstreamFailureCause(run)));
         }
-        run.removeActions(BuildTriggerAction.class);
     }
 
     @Override
     public void onDeleted(final Run<?,?> run) {
+        UpstreamRunSaver.deleted(run);
+        BuildGraphIndex.get().deleted(run);
         for (final BuildTriggerAction.Trigger trigger : BuildTriggerAction.triggersFor(run)) {
+            BuildTriggerRegistry.remove(trigger.context);
             Timer.get().submit(() -> {
-                if (trigger.context.isReady()) {
+                if (trigger.key != null) {
+                    BuildAllStepExecution.failed(trigger.context, trigger.key, new AbortException(run.getFullDisplayName() + " was deleted"));
+                } else if (trigger.context.isReady()) {
                     trigger.context.onFailure(new AbortException(run.getFullDisplayName() + " was deleted"));
                 }
             });
@@ -95,15 +173,12 @@ public class BuildTriggerListener extends RunListener<Run<?,?>>{
         for (Cause cause : downstream.getCauses()) {
             if (cause instanceof BuildUpstreamCause) {
                 BuildUpstreamCause buildUpstreamCause = (BuildUpstreamCause) cause;
+                BuildGraphIndex.get().started(buildUpstreamCause.getUpstreamProject() + '#' + buildUpstreamCause.getUpstreamBuild(), buildUpstreamCause.getNodeId(), downstream);
                 Run<?, ?> upstream = buildUpstreamCause.getUpstreamRun();
                 if (upstream instanceof FlowExecutionOwner.Executable) {
                     String flowNodeId = buildUpstreamCause.getNodeId();
-                    DownstreamBuildAction.getOrCreate(upstream, flowNodeId, downstream.getParent()).setBuild(downstream);
-                    try {
-                        upstream.save();
-                    } catch (IOException e) {
-                        LOGGER.log(Level.FINE, e, () -> "Unable to update DownstreamBuildAction for " + upstream + " node " + buildUpstreamCause.getNodeId());
-                    }
+                    DownstreamBuildAction.attach(upstream, flowNodeId, downstream);
+                    UpstreamRunSaver.markDirty(upstream);
                 }
             }
         }
@@ -0,0 +1,130 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
+import hudson.model.Queue;
+import hudson.model.listeners.ItemListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Catches up after a restart, rather than waiting for listeners which may never fire.
+ * Triggers on queued items are put back in {@link BuildTriggerRegistry},
+ * and {@code build} and {@code waitForBuild} steps whose build finished without them hearing of it
+ * (say because Jenkins stopped before {@link CompletionDispatcher} got to them) are told now.
+ * Looking up those builds may load them from disk, so it is spread over a few threads.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public final class BuildTriggerReconciler extends ItemListener {
+
+    private static final Logger LOGGER = Logger.getLogger(BuildTriggerReconciler.class.getName());
+
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for tests and script console")
+    static int THREADS = SystemProperties.getInteger(BuildTriggerReconciler.class.getName() + ".THREADS", 4);
+
+    @Override
+    public void onLoaded() {
+        reconcile();
+    }
+
+    /**
+     * Runs in the background.
+     * @return completed once every resumed step has been checked
+     */
+    static CompletableFuture<Void> reconcile() {
+        long start = System.nanoTime();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), "BuildTriggerReconciler"));
+        pool.allowCoreThreadTimeOut(true);
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        pool.execute(() -> {
+            int queued = registerQueued();
+            List<CompletableFuture<Boolean>> checks = new ArrayList<>();
+            // Each function runs once that Pipeline has been loaded, so only hands the work off.
+            CompletableFuture.allOf(
+                    whenDone(StepExecution.applyAll(BuildTriggerStepExecution.class, execution -> {
+                        check(checks, pool, execution::reconcile);
+                        return null;
+                    })),
+                    whenDone(StepExecution.applyAll(WaitForBuildStepExecution.class, execution -> {
+                        check(checks, pool, execution::reconcile);
+                        return null;
+                    }))
+            ).thenCompose(v -> {
+                synchronized (checks) {
+                    return CompletableFuture.allOf(checks.toArray(new CompletableFuture<?>[0]));
+                }
+            }).whenComplete((v, x) -> {
+                pool.shutdown();
+                int waiting;
+                long reported;
+                synchronized (checks) {
+                    waiting = checks.size();
+                    reported = checks.stream().filter(check -> check.getNow(false)).count();
+                }
+                LOGGER.log(Level.INFO, "Reconciled {0} queued triggers and {1} waiting steps in {2}ms; {3} had missed the end of their build",
+                        new Object[] {queued, waiting, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), reported});
+                done.complete(null);
+            });
+        });
+        return done;
+    }
+
+    /** Completes when the given future does, successfully or not: a Pipeline which failed to load has nothing to reconcile. */
+    private static CompletableFuture<Void> whenDone(@NonNull ListenableFuture<?> future) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        future.addListener(() -> done.complete(null), Runnable::run);
+        return done;
+    }
+
+    /** Puts triggers of queued items back in {@link BuildTriggerRegistry}, for steps saved before they recorded their queue item. */
+    private static int registerQueued() {
+        int count = 0;
+        try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+            for (Queue.Item item : Queue.getInstance().getItems()) {
+                for (BuildTriggerAction.Trigger trigger : BuildTriggerAction.triggersFor(item)) {
+                    if (trigger.context != null && trigger.key == null && !trigger.waitForStart) {
+                        BuildTriggerRegistry.register(trigger.context, null);
+                        BuildTriggerRegistry.scheduled(trigger.context, item.getId());
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private static void check(@NonNull List<CompletableFuture<Boolean>> checks, @NonNull ExecutorService pool, @NonNull BooleanSupplier reconcile) {
+        CompletableFuture<Boolean> check = CompletableFuture.supplyAsync(() -> {
+            try {
+                return reconcile.getAsBoolean();
+            } catch (RuntimeException x) {
+                LOGGER.log(Level.WARNING, null, x);
+                return false;
+            }
+        }, pool);
+        synchronized (checks) {
+            checks.add(check);
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Executor;
+import hudson.model.Run;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+
+/**
+ * In-memory index from a waiting {@code build} step to its queue item or downstream build.
+ * Lets {@link BuildTriggerStepExecution#stop} go straight to the right item rather than scanning the whole queue and
+ * every executor. Entries are only a hint: they are not persisted, so callers must fall back to a scan when missing.
+ */
+final class BuildTriggerRegistry {
+
+    private static final Map<StepContext, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    /** What is known about the downstream build of one step. */
+    static final class Entry {
+
+        /** {@link hudson.model.Queue.Item#getId}, or -1 if not yet known. */
+        volatile long queueItemId = -1;
+
+        /** The downstream build, once started. */
+        volatile @CheckForNull Run<?, ?> run;
+
+        /** The executor running {@link #run}, if known. */
+        volatile @CheckForNull Executor executor;
+
+        /** The step execution, so that its persistent fields can be kept up to date; not known to {@link BuildTriggerReconciler}. */
+        volatile @CheckForNull BuildTriggerStepExecution execution;
+
+        Entry(@CheckForNull BuildTriggerStepExecution execution) {
+            this.execution = execution;
+        }
+
+    }
+
+    private BuildTriggerRegistry() {}
+
+    /** Called before the downstream build is scheduled, so that listeners firing early have somewhere to record progress. */
+    static void register(@NonNull StepContext context, @CheckForNull BuildTriggerStepExecution execution) {
+        Entry entry = ENTRIES.computeIfAbsent(context, k -> new Entry(execution));
+        if (entry.execution == null && execution != null) {
+            entry.execution = execution;
+        }
+    }
+
+    static void scheduled(@NonNull StepContext context, long queueItemId) {
+        Entry entry = ENTRIES.get(context);
+        if (entry != null) {
+            entry.queueItemId = queueItemId;
+        }
+    }
+
+    static void started(@CheckForNull StepContext context, @NonNull Run<?, ?> run, @CheckForNull Executor executor) {
+        if (context == null) {
+            return;
+        }
+        Entry entry = ENTRIES.get(context);
+        if (entry != null) {
+            entry.run = run;
+            entry.executor = executor;
+            if (entry.execution != null) {
+                entry.execution.downstreamStarted(run);
+            }
+        }
+    }
+
+    /** Called once the step no longer waits for its downstream build, which also frees its {@link InFlightLimits} slot if any. */
+    static void remove(@CheckForNull StepContext context) {
+        if (context != null) {
+            ENTRIES.remove(context);
+            InFlightLimits.release(context);
+        }
+    }
+
+    static @CheckForNull Entry get(@NonNull StepContext context) {
+        return ENTRIES.get(context);
+    }
+
+}
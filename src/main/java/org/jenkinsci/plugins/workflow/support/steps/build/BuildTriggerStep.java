@@ -1,5 +1,6 @@
 package org.jenkinsci.plugins.workflow.support.steps.build;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 import hudson.Extension;
@@ -7,7 +8,6 @@ import hudson.model.AutoCompletionCandidates;
 import hudson.model.Describable;
 import hudson.model.Item;
 import hudson.model.ItemGroup;
-import hudson.model.ItemVisitor;
 import hudson.model.Job;
 import hudson.model.ParameterDefinition;
 import hudson.model.ParameterValue;
@@ -50,12 +50,27 @@ import org.kohsuke.stapler.StaplerRequest2;
 
 public class BuildTriggerStep extends Step {
 
+    /** What to do when {@link #getQueueTimeout} expires. */
+    public enum QueueTimeoutPolicy {
+        /** Fail the step. */
+        FAIL,
+        /** Let the Pipeline continue as if the build had not been waited for; the step returns null. */
+        CONTINUE
+    }
+
     private final String job;
     private List<ParameterValue> parameters;
     private boolean wait = true;
     private boolean waitForStart = false;
     private boolean propagate = true;
     private Integer quietPeriod;
+    private Integer queueTimeout;
+    private QueueTimeoutPolicy onQueueTimeout = QueueTimeoutPolicy.FAIL;
+    private boolean reuse;
+    private Integer maxInFlight;
+    private Integer priority;
+    private BuildSummary.ReturnMode returnMode = BuildSummary.ReturnMode.RUN;
+    private List<String> summaryVariables;
 
     @DataBoundConstructor
     public BuildTriggerStep(String job) {
@@ -98,6 +113,73 @@ public class BuildTriggerStep extends Step {
         this.quietPeriod = quietPeriod;
     }
 
+    /** Seconds to wait for the downstream build to leave the queue, if waiting for it at all. */
+    public Integer getQueueTimeout() {
+        return queueTimeout;
+    }
+
+    @DataBoundSetter public void setQueueTimeout(Integer queueTimeout) {
+        this.queueTimeout = queueTimeout;
+    }
+
+    public QueueTimeoutPolicy getOnQueueTimeout() {
+        return onQueueTimeout;
+    }
+
+    @DataBoundSetter public void setOnQueueTimeout(QueueTimeoutPolicy onQueueTimeout) {
+        this.onQueueTimeout = onQueueTimeout;
+    }
+
+    /** Whether to wait for a running build of the job with the same parameters, if there is one, rather than scheduling another. */
+    public boolean isReuse() {
+        return reuse;
+    }
+
+    @DataBoundSetter public void setReuse(boolean reuse) {
+        this.reuse = reuse;
+    }
+
+    /**
+     * Maximum number of builds of the job which may be scheduled or running at once on behalf of {@code build} steps using this option;
+     * further steps wait, outside the queue, until one finishes.
+     */
+    public Integer getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    @DataBoundSetter public void setMaxInFlight(Integer maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Hint for ordering the queue: builds with a higher priority start first.
+     * Only honored when {@link BuildPrioritySorter} is enabled.
+     */
+    public Integer getPriority() {
+        return priority;
+    }
+
+    @DataBoundSetter public void setPriority(Integer priority) {
+        this.priority = priority;
+    }
+
+    public BuildSummary.ReturnMode getReturnMode() {
+        return returnMode;
+    }
+
+    @DataBoundSetter public void setReturnMode(BuildSummary.ReturnMode returnMode) {
+        this.returnMode = returnMode;
+    }
+
+    /** Names of build variables to copy into the {@link BuildSummary}, if {@link #getReturnMode} asks for one. */
+    public List<String> getSummaryVariables() {
+        return summaryVariables;
+    }
+
+    @DataBoundSetter public void setSummaryVariables(List<String> summaryVariables) {
+        this.summaryVariables = summaryVariables;
+    }
+
     public boolean isPropagate() {
         return propagate;
     }
@@ -235,60 +317,7 @@ public class BuildTriggerStep extends Step {
         }
 
         public AutoCompletionCandidates doAutoCompleteJob(@AncestorInPath ItemGroup<?> container, @QueryParameter final String value) {
-            // TODO remove code copy&pasted from AutoCompletionCandidates.ofJobNames when it supports testing outside Item bound
-            final AutoCompletionCandidates candidates = new AutoCompletionCandidates();
-            class Visitor extends ItemVisitor {
-                String prefix;
-
-                Visitor(String prefix) {
-                    this.prefix = prefix;
-                }
-
-                @Override
-                public void onItem(Item i) {
-                    String n = contextualNameOf(i);
-                    if ((n.startsWith(value) || value.startsWith(n))
-                            // 'foobar' is a valid candidate if the current value is 'foo'.
-                            // Also, we need to visit 'foo' if the current value is 'foo/bar'
-                            && (value.length() > n.length() || !n.substring(value.length()).contains("/"))
-                            // but 'foobar/zot' isn't if the current value is 'foo'
-                            // we'll first show 'foobar' and then wait for the user to type '/' to show the rest
-                            && i.hasPermission(Item.READ)
-                        // and read permission required
-                            ) {
-                        if (i instanceof Queue.Task && n.startsWith(value))
-                            candidates.add(n);
-
-                        // recurse
-                        String oldPrefix = prefix;
-                        prefix = n;
-                        super.onItem(i);
-                        prefix = oldPrefix;
-                    }
-                }
-
-                private String contextualNameOf(Item i) {
-                    if (prefix.endsWith("/") || prefix.length() == 0)
-                        return prefix + i.getName();
-                    else
-                        return prefix + '/' + i.getName();
-                }
-            }
-
-            if (container == null || container == Jenkins.getInstanceOrNull()) {
-                new Visitor("").onItemGroup(Jenkins.getInstanceOrNull());
-            } else {
-                new Visitor("").onItemGroup(container);
-                if (value.startsWith("/"))
-                    new Visitor("/").onItemGroup(Jenkins.getInstanceOrNull());
-
-                for (StringBuilder p = new StringBuilder("../"); value.startsWith(p.toString()); p .append("../")) {
-                    container = ((Item) container).getParent();
-                    new Visitor(p.toString()).onItemGroup(container);
-                }
-            }
-            return candidates;
-            // END of copy&paste
+            return JobNameIndex.candidates(container, value);
         }
 
         @Restricted(DoNotUse.class) // for use from config.jelly
@@ -297,6 +326,32 @@ public class BuildTriggerStep extends Step {
             return job != null ? job.getFullName() : null;
         }
 
+        /**
+         * Resolves a job name the way the step would, through {@link ResolvedItemCache}.
+         * @param context full name of the job whose snippet generator is in use, if any
+         */
+        @Restricted(DoNotUse.class) // for use from parameters.groovy
+        public @CheckForNull Item resolveJob(@NonNull String job, @CheckForNull String context) {
+            return ResolvedItemCache.resolve(job, context != null ? ResolvedItemCache.resolve(context, null) : null);
+        }
+
+        /**
+         * Parameter definitions to render for a job, from {@link ParameterDefinitionCache}.
+         * Rendering is left to the page, since it generates element IDs unique to that page.
+         * @return null if the job is not parameterized
+         */
+        @Restricted(DoNotUse.class) // for use from parameters.groovy
+        public @CheckForNull List<ParameterDefinition> getParameterDefinitions(@NonNull Job<?, ?> job) {
+            if (job.getProperty(ParametersDefinitionProperty.class) == null) {
+                return null;
+            }
+            List<ParameterDefinition> definitions = new ArrayList<>();
+            for (ParameterDefinitionCache.Definition d : ParameterDefinitionCache.definitions(job, BuildTriggerStepExecution.CHOICE_PARAMETER_DEFINITION_LIKE_CLASSES)) {
+                definitions.add(d.definition);
+            }
+            return definitions;
+        }
+
         public FormValidation doCheckPropagate(@QueryParameter boolean value, @QueryParameter boolean wait) {
             if (!value && !wait) {
                 return FormValidation.warningWithMarkup(Messages.BuildTriggerStep_explicitly_disabling_both_propagate_and_wait());
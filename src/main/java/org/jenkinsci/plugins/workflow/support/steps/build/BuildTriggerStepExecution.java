@@ -9,7 +9,6 @@ import hudson.Util;
 import hudson.console.ModelHyperlinkNote;
 import hudson.model.Action;
 import hudson.model.CauseAction;
-import hudson.model.ChoiceParameterDefinition;
 import hudson.model.Computer;
 import hudson.model.Describable;
 import hudson.model.Executor;
@@ -18,15 +17,15 @@ import hudson.model.Job;
 import hudson.model.ParameterDefinition;
 import hudson.model.ParameterValue;
 import hudson.model.ParametersAction;
-import hudson.model.ParametersDefinitionProperty;
 import hudson.model.Queue;
 import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.SimpleParameterDefinition;
-import hudson.model.StringParameterDefinition;
 import hudson.model.StringParameterValue;
 import hudson.model.TaskListener;
 import hudson.model.queue.ScheduleResult;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
 import jenkins.model.Jenkins;
 import jenkins.model.ParameterizedJobMixIn;
 import org.jenkinsci.plugins.workflow.actions.LabelAction;
@@ -35,20 +34,23 @@ import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
 import org.jenkinsci.plugins.workflow.steps.StepContext;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class BuildTriggerStepExecution extends AbstractStepExecutionImpl {
 
     private static final Logger LOGGER = Logger.getLogger(BuildTriggerStepExecution.class.getName());
-    private static final Set<String> CHOICE_PARAMETER_DEFINITION_LIKE_CLASSES = ImmutableSet.of(
+    static final Set<String> CHOICE_PARAMETER_DEFINITION_LIKE_CLASSES = ImmutableSet.of(
             "jp.ikedam.jenkins.plugins.extensible_choice_parameter.ExtensibleChoiceParameterDefinition",
             // The names are misleading, but these classes are all parameter definitions, not parameters.
             "org.biouno.unochoice.CascadeChoiceParameter",
@@ -57,6 +59,55 @@ public class BuildTriggerStepExecution extends AbstractStepExecutionImpl {
 
     private final transient BuildTriggerStep step;
 
+    /** {@link Queue.Item#getId} of the downstream build, once scheduled; null for executions from older versions. */
+    private volatile @CheckForNull Long queueItemId;
+
+    /** {@link Run#getExternalizableId} of the downstream build, once started. */
+    private volatile @CheckForNull String downstreamRunId;
+
+    /** {@link System#currentTimeMillis} by which the downstream build must have left the queue, if limited. */
+    private volatile @CheckForNull Long queueDeadline;
+
+    /** {@link BuildTriggerStep#getQueueTimeout}, if waiting. */
+    private @CheckForNull Integer queueTimeout;
+
+    private @CheckForNull BuildTriggerStep.QueueTimeoutPolicy onQueueTimeout;
+
+    /** Whether the downstream build was already running for someone else, per {@link BuildTriggerStep#isReuse}. */
+    private boolean reused;
+
+    /** What to schedule once {@link InFlightLimits} allows it, if {@link BuildTriggerStep#getMaxInFlight} was set. */
+    private volatile @CheckForNull Throttled throttled;
+
+    /** The parts of a {@link BuildTriggerStep} needed to schedule its build later, perhaps after a restart. */
+    static final class Throttled implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        final @NonNull String job;
+        final int maxInFlight;
+        final @CheckForNull ArrayList<ParameterValue> parameters;
+        final int quietPeriod;
+        final boolean propagate;
+        final @CheckForNull ArrayList<String> summaryVariables;
+        /** {@link BuildTriggerStep#getPriority}; null also for records from older versions. */
+        final @CheckForNull Integer priority;
+        /** When the step asked for the build, so that its trace covers the wait; zero for records from older versions. */
+        final long requestedAt;
+
+        Throttled(@NonNull String job, int maxInFlight, @CheckForNull List<ParameterValue> parameters, int quietPeriod, boolean propagate, @CheckForNull List<String> summaryVariables, @CheckForNull Integer priority) {
+            this.job = job;
+            this.maxInFlight = maxInFlight;
+            this.parameters = parameters != null ? new ArrayList<>(parameters) : null;
+            this.quietPeriod = quietPeriod;
+            this.propagate = propagate;
+            this.summaryVariables = summaryVariables != null ? new ArrayList<>(summaryVariables) : null;
+            this.priority = priority;
+            this.requestedAt = System.currentTimeMillis();
+        }
+
+    }
+
     public BuildTriggerStepExecution(BuildTriggerStep step, @NonNull StepContext context) {
         super(context);
         this.step = step;
@@ -67,7 +118,7 @@ public class BuildTriggerStepExecution extends AbstractStepExecutionImpl {
     public boolean start() throws Exception {
         String job = step.getJob();
         Run<?, ?> upstream = getContext().get(Run.class);
-        Item item = Jenkins.get().getItem(job, upstream.getParent(), Item.class);
+        Item item = ResolvedItemCache.resolve(job, upstream.getParent());
         if (item == null) {
             throw new AbortException("No item named " + job + " found");
         }
@@ -77,12 +128,30 @@ public class BuildTriggerStepExecution extends AbstractStepExecutionImpl {
             throw new AbortException("Waiting for non-job items is not supported");
         }
 
+        Integer maxInFlight = step.getMaxInFlight();
+        if (maxInFlight != null && (!step.getWait() || step.getWaitForStart() || !(item instanceof ParameterizedJobMixIn.ParameterizedJob))) {
+            throw new AbortException("maxInFlight may only be used when waiting for completion of a job");
+        }
+        if (maxInFlight != null && maxInFlight < 1) {
+            throw new AbortException("maxInFlight must be at least 1");
+        }
+        if (step.getWait() || step.getWaitForStart()) {
+            queueTimeout = step.getQueueTimeout();
+            onQueueTimeout = step.getOnQueueTimeout();
+        }
+
         FlowNode node = getContext().get(FlowNode.class);
         DownstreamBuildAction.getOrCreate(upstream, node.getId(), item);
 
         List<Action> actions = new ArrayList<>();
+        BuildTriggerAction.Trigger trigger = null;
         actions.add(new CauseAction(new BuildUpstreamCause(getContext().get(FlowNode.class), upstream)));
         actions.add(new BuildUpstreamNodeAction(node, upstream));
+        actions.add(BuildTraceAction.child(upstream, node, null));
+        BuildPriorityAction priority = BuildPriorityAction.of(step.getPriority(), upstream);
+        if (priority != null) {
+            actions.add(priority);
+        }
 
         if (item instanceof ParameterizedJobMixIn.ParameterizedJob) {
             final ParameterizedJobMixIn.ParameterizedJob project = (ParameterizedJobMixIn.ParameterizedJob) item;
@@ -96,21 +165,54 @@ public class BuildTriggerStepExecution extends AbstractStepExecutionImpl {
 
             if (step.getWait() || step.getWaitForStart()) {
                 StepContext context = getContext();
-                actions.add(new BuildTriggerAction(context, step.isPropagate(), step.getWaitForStart()));
+                trigger = new BuildTriggerAction.Trigger(context, step.isPropagate(), step.getWaitForStart());
+                trigger.summaryVariables = summaryVariables(step.getReturnMode(), step.getSummaryVariables());
+                actions.add(new BuildTriggerAction(trigger));
                 LOGGER.log(Level.FINER, "scheduling a build of {0} from {1}", new Object[]{project, context});
             }
 
             List<ParameterValue> parameters = step.getParameters();
             if (parameters != null) {
-                parameters = completeDefaultParameters(parameters, (Job) project);
+                parameters = completeDefaultParameters(parameters, (Job) project, getContext());
                 actions.add(new ParametersAction(parameters));
             }
+            if (step.isReuse()) {
+                List<ParameterValue> requested = parameters != null ? parameters : completeDefaultParameters(Collections.emptyList(), (Job) project, getContext());
+                // Register first, as the reused build may complete as soon as the trigger is attached.
+                registerIfWaiting();
+                Run<?, ?> run = ReusableBuilds.join((Job<?, ?>) project, requested, trigger != null && !trigger.waitForStart ? trigger : null);
+                if (run != null) {
+                    return reuse(run, upstream, node);
+                }
+            }
             int quietPeriod = step.getQuietPeriod() != null ? step.getQuietPeriod() : -1;
-            Queue.Item queueItem =
-                    ParameterizedJobMixIn.scheduleBuild2(
-                            (Job<?, ?>) project, quietPeriod, actions.toArray(new Action[0]));
-            if (queueItem == null || queueItem.getFuture() == null) {
-                throw new AbortException("Failed to trigger build of " + project.getFullName());
+            if (maxInFlight != null) {
+                throttled = new Throttled(project.getFullName(), maxInFlight, parameters, quietPeriod, step.isPropagate(), trigger != null ? trigger.summaryVariables : null, step.getPriority());
+                if (!InFlightLimits.acquire(this, project.getFullName(), maxInFlight)) {
+                    getContext().get(TaskListener.class).getLogger().println("Waiting until fewer than " + maxInFlight + " builds of " + ModelHyperlinkNote.encodeTo(project) + " are in progress");
+                    return false;
+                }
+                if (trigger != null) {
+                    trigger.throttled = true;
+                }
+            }
+            boolean scheduled = false;
+            try {
+                registerIfWaiting();
+                Queue.Item queueItem =
+                        ParameterizedJobMixIn.scheduleBuild2(
+                                (Job<?, ?>) project, quietPeriod, actions.toArray(new Action[0]));
+                if (queueItem == null || queueItem.getFuture() == null) {
+                    BuildTriggerRegistry.remove(getContext());
+                    throw new AbortException("Failed to trigger build of " + project.getFullName());
+                }
+                scheduled(queueItem, trigger);
+                scheduled = true;
+            } finally {
+                if (!scheduled) {
+                    // Otherwise the slot taken above would never be freed.
+                    InFlightLimits.release(getContext());
+                }
             }
         } else if (item instanceof Queue.Task){
             if (step.getParameters() != null && !step.getParameters().isEmpty()) {
@@ -126,7 +228,9 @@ public class BuildTriggerStepExecution extends AbstractStepExecutionImpl {
 
             if (step.getWait() || step.getWaitForStart()) {
                 StepContext context = getContext();
-                actions.add(new BuildTriggerAction(context, step.isPropagate(), step.getWaitForStart()));
+                trigger = new BuildTriggerAction.Trigger(context, step.isPropagate(), step.getWaitForStart());
+                trigger.summaryVariables = summaryVariables(step.getReturnMode(), step.getSummaryVariables());
+                actions.add(new BuildTriggerAction(trigger));
                 LOGGER.log(Level.FINER, "scheduling a build of {0} from {1}", new Object[]{task, context});
             }
 
@@ -146,10 +250,16 @@ public class BuildTriggerStepExecution extends AbstractStepExecutionImpl {
             if (quietPeriod == null) {
                 quietPeriod = Jenkins.get().getQuietPeriod();
             }
+            registerIfWaiting();
             ScheduleResult scheduleResult = Jenkins.get().getQueue().schedule2(task, quietPeriod,actions);
             if (scheduleResult.isRefused()) {
+                BuildTriggerRegistry.remove(getContext());
                 throw new AbortException("Failed to trigger build of " + item.getFullName());
             }
+            Queue.Item queueItem = scheduleResult.getItem();
+            if (queueItem != null) {
+                scheduled(queueItem, trigger);
+            }
         } else {
             throw new AbortException("The item named " + job + " is a "
                     + (item instanceof Describable
@@ -165,49 +275,277 @@ public class BuildTriggerStepExecution extends AbstractStepExecutionImpl {
         }
     }
 
-    private List<ParameterValue> completeDefaultParameters(List<ParameterValue> parameters, Job<?,?> project) throws IOException, InterruptedException {
+    /**
+     * Waits for a build of the requested job and parameters which was already running.
+     * @return as for {@link #start}
+     */
+    private boolean reuse(@NonNull Run<?, ?> run, @NonNull Run<?, ?> upstream, @NonNull FlowNode node) throws IOException, InterruptedException {
+        StepContext context = getContext();
+        context.get(TaskListener.class).getLogger().println("Reusing running build: " + ModelHyperlinkNote.encodeTo("/" + run.getUrl(), run.getFullDisplayName()));
+        DownstreamBuildAction.attach(upstream, node.getId(), run);
+        UpstreamRunSaver.markDirty(upstream);
+        BuildGraphIndex.get().started(upstream.getExternalizableId(), node.getId(), run);
+        if (step.getWaitForStart()) {
+            BuildTriggerRegistry.remove(context);
+            context.onSuccess(new RunWrapper(run, false));
+            return true;
+        } else if (!step.getWait()) {
+            context.onSuccess(null);
+            return true;
+        }
+        reused = true;
+        BuildTriggerRegistry.started(context, run, run.getExecutor());
+        return false;
+    }
+
+    /** Computes {@link BuildTriggerAction.Trigger#summaryVariables} or {@link WaitForBuildAction#summaryVariables} from step configuration. */
+    static @CheckForNull ArrayList<String> summaryVariables(@CheckForNull BuildSummary.ReturnMode returnMode, @CheckForNull List<String> summaryVariables) {
+        if (returnMode != BuildSummary.ReturnMode.SUMMARY) {
+            return null;
+        }
+        return summaryVariables != null ? new ArrayList<>(summaryVariables) : new ArrayList<>();
+    }
+
+    private void registerIfWaiting() {
+        if (step.getWait() || step.getWaitForStart()) {
+            BuildTriggerRegistry.register(getContext(), this);
+        }
+    }
+
+    /**
+     * Records a scheduled build.
+     * @param trigger the step's trigger, null if not waiting
+     */
+    private void scheduled(@NonNull Queue.Item queueItem, @CheckForNull BuildTriggerAction.Trigger trigger) {
+        if (trigger != null) {
+            trigger.scheduled();
+            queueItemId = queueItem.getId();
+            BuildTriggerRegistry.scheduled(getContext(), queueItem.getId());
+            if (queueTimeout != null && queueTimeout >= 0) {
+                queueDeadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(queueTimeout);
+                QueueTimeouts.schedule(this, queueDeadline);
+            }
+        }
+    }
+
+    /**
+     * Called by {@link InFlightLimits} once the build deferred per {@link #throttled} may be scheduled.
+     * Synchronized with {@link #stop}, so that a step stopped meanwhile never schedules its build.
+     */
+    synchronized void inFlightSlotAvailable() {
+        Throttled t = throttled;
+        StepContext context = getContext();
+        if (t == null || queueItemId != null) {
+            return;
+        }
+        try {
+            Job<?, ?> project = Jenkins.get().getItemByFullName(t.job, Job.class);
+            if (!(project instanceof ParameterizedJobMixIn.ParameterizedJob)) {
+                throw new AbortException("No job named " + t.job + " found");
+            }
+            Run<?, ?> upstream = context.get(Run.class);
+            FlowNode node = context.get(FlowNode.class);
+            BuildTriggerAction.Trigger trigger = new BuildTriggerAction.Trigger(context, t.propagate, false);
+            trigger.summaryVariables = t.summaryVariables;
+            trigger.throttled = true;
+            List<Action> actions = new ArrayList<>();
+            actions.add(new CauseAction(new BuildUpstreamCause(node, upstream)));
+            actions.add(new BuildUpstreamNodeAction(node, upstream));
+            actions.add(BuildTraceAction.child(upstream, node, null, t.requestedAt != 0 ? t.requestedAt : System.currentTimeMillis()));
+            BuildPriorityAction priority = BuildPriorityAction.of(t.priority, upstream);
+            if (priority != null) {
+                actions.add(priority);
+            }
+            actions.add(new BuildTriggerAction(trigger));
+            if (t.parameters != null) {
+                actions.add(new ParametersAction(t.parameters));
+            }
+            BuildTriggerRegistry.register(context, this);
+            Queue.Item queueItem = ParameterizedJobMixIn.scheduleBuild2(project, t.quietPeriod, actions.toArray(new Action[0]));
+            if (queueItem == null || queueItem.getFuture() == null) {
+                throw new AbortException("Failed to trigger build of " + project.getFullName());
+            }
+            scheduled(queueItem, trigger);
+            // Otherwise a restart would schedule it again.
+            context.saveState();
+        } catch (Exception x) {
+            BuildTriggerRegistry.remove(context);
+            context.onFailure(x);
+        }
+    }
+
+    /**
+     * Called by {@link QueueTimeouts} once {@link #queueDeadline} has passed.
+     * If the downstream build is still in the queue, withdraws this step from it (cancelling it if nothing else wants it)
+     * and completes the step according to {@link BuildTriggerStep#getOnQueueTimeout}.
+     */
+    void queueTimeoutExpired() {
+        Long id = queueItemId;
+        if (downstreamRunId != null || id == null) {
+            return;
+        }
+        StepContext context = getContext();
+        boolean withdrawn;
+        String name;
+        try {
+            BuildUpstreamCause ours = new BuildUpstreamCause(context.get(FlowNode.class), context.get(Run.class));
+            Queue q = Queue.getInstance();
+            Queue.Item i = q.getItem(id);
+            name = i != null ? i.task.getFullDisplayName() : null;
+            withdrawn = Queue.withLock(() -> {
+                Queue.Item item = q.getItem(id);
+                if (item == null || item instanceof Queue.LeftItem || (item instanceof Queue.BuildableItem && ((Queue.BuildableItem) item).isPending())) {
+                    // Too late: BuildTriggerListener will report the build.
+                    return false;
+                }
+                boolean removed = false;
+                for (Action a : item.getActions()) {
+                    if (a instanceof BuildTriggerAction) {
+                        removed |= ((BuildTriggerAction) a).remove(context);
+                    }
+                }
+                if (removed && BuildTriggerAction.triggersFor(item).isEmpty() && item.getCauses().stream().allMatch(ours::equals)) {
+                    q.cancel(item);
+                }
+                return removed;
+            });
+        } catch (Exception x) {
+            LOGGER.log(Level.WARNING, "failed to apply queue timeout to " + context, x);
+            return;
+        }
+        if (!withdrawn) {
+            return;
+        }
+        BuildTriggerRegistry.remove(context);
+        String message = "Build of " + name + " did not start within " + Util.getTimeSpanString(TimeUnit.SECONDS.toMillis(queueTimeout != null ? queueTimeout : 0));
+        if (onQueueTimeout == BuildTriggerStep.QueueTimeoutPolicy.CONTINUE) {
+            try {
+                context.get(TaskListener.class).getLogger().println(message + "; continuing");
+            } catch (Exception x) {
+                LOGGER.log(Level.WARNING, null, x);
+            }
+            context.onSuccess(null);
+        } else {
+            context.onFailure(new AbortException(message));
+        }
+    }
+
+    /**
+     * Called when the downstream build was cancelled in the queue, or started for a step waiting only for the start,
+     * neither of which goes through {@link #downstreamStarted}.
+     */
+    void leftQueue() {
+        if (queueDeadline != null) {
+            QueueTimeouts.cancel(this);
+        }
+    }
+
+    /** Called by {@link BuildTriggerListener#onStarted}. */
+    void downstreamStarted(@NonNull Run<?, ?> run) {
+        downstreamRunId = run.getExternalizableId();
+        if (queueDeadline != null) {
+            QueueTimeouts.cancel(this);
+        }
+        // Otherwise after an unclean restart reconcile and stillInFlight would have nothing to go on.
+        getContext().saveState();
+    }
+
+    @Override
+    public void onResume() {
+        if (queueItemId != null || downstreamRunId != null) {
+            BuildTriggerRegistry.register(getContext(), this);
+            if (queueItemId != null) {
+                BuildTriggerRegistry.scheduled(getContext(), queueItemId);
+            }
+        }
+        if (queueDeadline != null && downstreamRunId == null) {
+            QueueTimeouts.schedule(this, queueDeadline);
+        }
+        if (throttled != null) {
+            if (queueItemId == null) {
+                InFlightLimits.resumedWaiting(this, throttled.job, throttled.maxInFlight);
+            } else if (stillInFlight()) {
+                InFlightLimits.resumed(getContext(), throttled.job);
+            }
+        }
+    }
+
+    /**
+     * Called by {@link BuildTriggerReconciler} once the step has resumed after a restart.
+     * @return whether the downstream build had already finished without the step being told, and now has been
+     */
+    boolean reconcile() {
+        String id = downstreamRunId;
+        if (id == null) {
+            return false;
+        }
+        Run<?, ?> run;
+        try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+            run = Run.fromExternalizableId(id);
+        }
+        // isLogUpdated rather than isBuilding, since a build in post-production has yet to be finalized.
+        return run != null && !run.isLogUpdated() && BuildTriggerListener.reconcile(run, getContext());
+    }
+
+    /** Whether the downstream build is still queued or running, so that {@link BuildTriggerListener} has yet to release its slot. */
+    private boolean stillInFlight() {
+        if (downstreamRunId != null) {
+            Run<?, ?> run = Run.fromExternalizableId(downstreamRunId);
+            return run != null && run.isBuilding();
+        }
+        Long id = queueItemId;
+        if (id == null) {
+            return false;
+        }
+        Queue.Item item = Queue.getInstance().getItem(id);
+        if (item instanceof Queue.LeftItem) {
+            Queue.Executable executable = ((Queue.LeftItem) item).getExecutable();
+            return executable instanceof Run && ((Run<?, ?>) executable).isBuilding();
+        }
+        return item != null;
+    }
+
+    static List<ParameterValue> completeDefaultParameters(List<ParameterValue> parameters, Job<?,?> project, StepContext context) throws IOException, InterruptedException {
         Map<String,ParameterValue> allParameters = new LinkedHashMap<>();
         for (ParameterValue pv : parameters) {
             allParameters.put(pv.getName(), pv);
         }
         if (project != null) {
-            ParametersDefinitionProperty pdp = project.getProperty(ParametersDefinitionProperty.class);
-            if (pdp != null) {
-                for (ParameterDefinition pDef : pdp.getParameterDefinitions()) {
-                    if (!allParameters.containsKey(pDef.getName())) {
-                        ParameterValue defaultP = pDef.getDefaultParameterValue();
-                        if (defaultP != null) {
-                            allParameters.put(defaultP.getName(), defaultP);
-                        }
-                    } else {
-                        String description = Util.fixNull(pDef.getDescription());
-                        if (pDef instanceof SimpleParameterDefinition && !(pDef instanceof StringParameterDefinition) && !(pDef instanceof ChoiceParameterDefinition)) {
-                            // c.f. https://github.com/jenkinsci/parameterized-trigger-plugin/blob/633587c4b0ae027175c738b3a2f46554a672f330/src/main/java/hudson/plugins/parameterizedtrigger/ProjectSpecificParameterValuesActionTransform.java
-                            ParameterValue pv = allParameters.get(pDef.getName());
-                            if (pv instanceof StringParameterValue) {
-                                String pDefDisplayName = pDef.getDescriptor().getDisplayName();
-                                // For classes with semantics similar to ChoiceParameterDefinition, a type mismatch for
-                                // the parameter versus the definition is expected, so we want to do the conversion, but
-                                // not log a warning.
-                                if (!CHOICE_PARAMETER_DEFINITION_LIKE_CLASSES.contains(pDef.getClass().getName())) {
-                                    getContext().get(TaskListener.class).getLogger().printf("The parameter '%s' did not have the type expected by %s. Converting to %s.%n", pv.getName(), ModelHyperlinkNote.encodeTo(project), pDefDisplayName);
-                                    description = Messages.BuildTriggerStepExecution_convertedParameterDescription(description, pDefDisplayName, getContext().get(Run.class).toString());
-                                }
-                                ParameterValue convertedValue = ((SimpleParameterDefinition) pDef).createValue((String) pv.getValue());
-                                allParameters.put(pDef.getName(), convertedValue);
-                            }
-                        }
+            for (ParameterDefinitionCache.Definition def : ParameterDefinitionCache.definitions(project, CHOICE_PARAMETER_DEFINITION_LIKE_CLASSES)) {
+                ParameterDefinition pDef = def.definition;
+                if (!allParameters.containsKey(pDef.getName())) {
+                    ParameterValue defaultP = def.getDefaultParameterValue();
+                    if (defaultP != null) {
+                        allParameters.put(defaultP.getName(), defaultP);
+                    }
+                } else {
+                    String description = Util.fixNull(pDef.getDescription());
+                    if (def.convertible) {
+                        // c.f. https://github.com/jenkinsci/parameterized-trigger-plugin/blob/633587c4b0ae027175c738b3a2f46554a672f330/src/main/java/hudson/plugins/parameterizedtrigger/ProjectSpecificParameterValuesActionTransform.java
                         ParameterValue pv = allParameters.get(pDef.getName());
-                        if (!pDef.isValid(pv)) {
-                            throw new AbortException("Invalid parameter value: " + pv);
+                        if (pv instanceof StringParameterValue) {
+                            String pDefDisplayName = pDef.getDescriptor().getDisplayName();
+                            // For classes with semantics similar to ChoiceParameterDefinition, a type mismatch for
+                            // the parameter versus the definition is expected, so we want to do the conversion, but
+                            // not log a warning.
+                            if (!def.choiceLike) {
+                                context.get(TaskListener.class).getLogger().printf("The parameter '%s' did not have the type expected by %s. Converting to %s.%n", pv.getName(), ModelHyperlinkNote.encodeTo(project), pDefDisplayName);
+                                description = Messages.BuildTriggerStepExecution_convertedParameterDescription(description, pDefDisplayName, context.get(Run.class).toString());
+                            }
+                            ParameterValue convertedValue = ((SimpleParameterDefinition) pDef).createValue((String) pv.getValue());
+                            allParameters.put(pDef.getName(), convertedValue);
                         }
+                    }
+                    ParameterValue pv = allParameters.get(pDef.getName());
+                    if (!pDef.isValid(pv)) {
+                        throw new AbortException("Invalid parameter value: " + pv);
+                    }
 
-                        // TODO: Should we try to detect some unconvertible cases and fail here instead of allowing it?
-                        // For example, someone passing BooleanParameterValue for a PasswordParameterDefinition?
+                    // TODO: Should we try to detect some unconvertible cases and fail here instead of allowing it?
+                    // For example, someone passing BooleanParameterValue for a PasswordParameterDefinition?
 
-                        // Get the description of specified parameters here. UI submission of parameters uses formatted description.
-                        allParameters.get(pDef.getName()).setDescription(description);
-                    }
+                    // Get the description of specified parameters here. UI submission of parameters uses formatted description.
+                    allParameters.get(pDef.getName()).setDescription(description);
                 }
             }
         }
@@ -217,45 +555,85 @@ public class BuildTriggerStepExecution extends AbstractStepExecutionImpl {
     @Override
     public void stop(@NonNull Throwable cause) throws Exception {
         StepContext context = getContext();
+        if (queueDeadline != null) {
+            QueueTimeouts.cancel(this);
+        }
+        boolean waiting;
+        synchronized (this) {
+            waiting = throttled != null && queueItemId == null;
+            if (waiting) {
+                throttled = null;
+            }
+        }
+        if (waiting) {
+            // Still waiting for InFlightLimits, so nothing to cancel; any slot just handed out is freed below.
+            InFlightLimits.withdraw(this);
+            BuildTriggerRegistry.remove(context);
+            context.onFailure(cause);
+            return;
+        }
         Jenkins jenkins = Jenkins.getInstanceOrNull();
         if (jenkins == null) {
             context.onFailure(cause);
             return;
         }
 
-        boolean interrupted = false;
-
-        Queue q = jenkins.getQueue();
-        // if the build is still in the queue, abort it.
-        // BuildQueueListener will report the failure, so this method shouldn't call getContext().onFailure()
-        for (Queue.Item i : q.getItems()) {
-            for (BuildTriggerAction.Trigger trigger : BuildTriggerAction.triggersFor(i)) {
-                if (trigger.context.equals(context)) {
-                    // Note that it is a little questionable to cancel the queue item in case it has other causes,
-                    // but in the common case that this is the only cause, it is most intuitive to do so.
-                    // The same applies to aborting the actual build once started.
-                    q.cancel(i);
-                    interrupted = true;
-                }
-            }
+        BuildTriggerRegistry.Entry entry = BuildTriggerRegistry.get(context);
+        Boolean interrupted = entry != null ? stopTracked(jenkins.getQueue(), entry, cause, context) : null;
+        if (interrupted == null) {
+            // Not tracked (for example from an older version), or caught between leaving the queue and starting.
+            // BuildTriggerCancellation will fail the step itself if it cannot find anything to cancel.
+            BuildTriggerCancellation.stop(context, cause);
+        } else if (!interrupted) {
+            BuildTriggerRegistry.remove(context);
+            super.stop(cause);
         }
+    }
 
-        // if there's any in-progress build already, abort that.
-        // when the build is actually aborted, BuildTriggerListener will take notice and report the failure,
-        // so this method shouldn't call getContext().onFailure()
-        for (Computer c : jenkins.getComputers()) {
-            for (Executor e : c.getExecutors()) {
-                interrupted |= maybeInterrupt(e, cause, context);
+    /**
+     * Cancels or interrupts the downstream build recorded in the registry.
+     * @return whether anything was cancelled or interrupted, or null if the entry was not conclusive
+     */
+    private static @CheckForNull Boolean stopTracked(@NonNull Queue q, @NonNull BuildTriggerRegistry.Entry entry, @NonNull Throwable cause, @NonNull StepContext context) {
+        Run<?, ?> run = entry.run;
+        BuildTriggerStepExecution execution = entry.execution;
+        if (run == null && execution != null && execution.downstreamRunId != null) {
+            run = Run.fromExternalizableId(execution.downstreamRunId);
+        }
+        if (run != null) {
+            if (!run.isBuilding()) {
+                // BuildTriggerListener.onFinalized will (or did) report the result.
+                return false;
             }
-            for (Executor e : c.getOneOffExecutors()) {
-                interrupted |= maybeInterrupt(e, cause, context);
+            if (execution != null && execution.reused) {
+                // Others may be waiting on it too, so just stop waiting.
+                boolean withdrawn = false;
+                for (Action a : run.getActions()) {
+                    if (a instanceof BuildTriggerAction) {
+                        withdrawn |= ((BuildTriggerAction) a).remove(context);
+                    }
+                }
+                return withdrawn ? false : null;
+            }
+            Executor e = entry.executor;
+            if (e == null || e.getCurrentExecutable() != run) {
+                e = run.getExecutor();
             }
+            return e != null && maybeInterrupt(e, cause, context) ? true : null;
         }
-
-        if (!interrupted) {
-            super.stop(cause);
+        if (entry.queueItemId != -1) {
+            Queue.Item i = q.getItem(entry.queueItemId);
+            if (i != null && !(i instanceof Queue.LeftItem)) {
+                for (BuildTriggerAction.Trigger trigger : BuildTriggerAction.triggersFor(i)) {
+                    if (trigger.context.equals(context) && q.cancel(i)) {
+                        return true;
+                    }
+                }
+            }
         }
+        return null;
     }
+
     private static boolean maybeInterrupt(Executor e, Throwable cause, StepContext context) {
         boolean interrupted = false;
         Queue.Executable exec = e.getCurrentExecutable();
@@ -277,6 +655,39 @@ public class BuildTriggerStepExecution extends AbstractStepExecutionImpl {
     }
 
     @Override public String getStatus() {
+        Throttled t = throttled;
+        if (t != null && queueItemId == null) {
+            return "waiting for one of " + t.maxInFlight + " slots of " + t.job;
+        }
+        if (queueItemId == null && downstreamRunId == null) {
+            return getStatusByScanning();
+        }
+        try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+            if (downstreamRunId != null) {
+                Run<?, ?> run = Run.fromExternalizableId(downstreamRunId);
+                if (run != null && run.isBuilding()) {
+                    return "running " + run;
+                }
+            } else {
+                Queue.Item i = Queue.getInstance().getItem(queueItemId);
+                if (i instanceof Queue.LeftItem) {
+                    Queue.Executable exec = ((Queue.LeftItem) i).getExecutable();
+                    if (exec instanceof Run) {
+                        return "running " + exec;
+                    }
+                    if (!((Queue.LeftItem) i).isCancelled()) {
+                        return "waiting for " + i.task.getFullDisplayName() + " to start";
+                    }
+                } else if (i != null) {
+                    return "waiting to schedule " + i.task.getFullDisplayName() + "; blocked: " + i.getWhy();
+                }
+            }
+        }
+        return "unsure what happened to downstream build";
+    }
+
+    /** Used for executions serialized before {@link #queueItemId} was recorded. */
+    private String getStatusByScanning() {
         for (Queue.Item i : Queue.getInstance().getItems()) {
             for (BuildTriggerAction.Trigger trigger : BuildTriggerAction.triggersFor(i)) {
                 if (trigger.context.equals(getContext())) {
@@ -298,9 +709,9 @@ public class BuildTriggerStepExecution extends AbstractStepExecutionImpl {
                 }
             }
         }
-        // TODO QueueTaskFuture does not allow us to record the queue item ID
         return "unsure what happened to downstream build";
     }
+
     private @CheckForNull String running(@NonNull Executor e) {
         Queue.Executable exec = e.getCurrentExecutable();
         if (exec instanceof Run) {
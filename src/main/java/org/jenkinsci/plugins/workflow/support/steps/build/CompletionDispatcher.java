@@ -0,0 +1,220 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.security.ACL;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.security.ImpersonatingExecutorService;
+import jenkins.util.ClassLoaderSanityThreadFactory;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Delivers downstream build completions to upstream steps off the thread finalizing the downstream build.
+ * Reporting to a step may need its Pipeline to be loaded, which can take a long time; with many upstream steps waiting
+ * on one downstream build, doing that inline would hold up finalization for everyone.
+ * Deliveries for the same {@link StepContext} run in the order submitted. That is the only ordering a step can observe:
+ * different steps of one upstream build complete independently, so they are not made to wait for one another.
+ * Once {@link #CAPACITY} deliveries are pending, further ones run inline rather than being dropped.
+ * Like {@link jenkins.util.Timer}, deliveries run as {@link ACL#SYSTEM2}.
+ * Deliveries still pending at shutdown are abandoned; callers leave what they report on the downstream build
+ * until their delivery runs, so that {@link BuildTriggerReconciler} can report it after the restart.
+ * Those submitted after shutdown has begun run inline.
+ * Queue depth and delivery delay are published by {@link BuildTriggerLatencyStatistics}.
+ */
+@Restricted(NoExternalUse.class)
+public final class CompletionDispatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(CompletionDispatcher.class.getName());
+
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for tests and script console")
+    static int THREADS = SystemProperties.getInteger(CompletionDispatcher.class.getName() + ".THREADS", 4);
+
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for tests and script console")
+    static int CAPACITY = SystemProperties.getInteger(CompletionDispatcher.class.getName() + ".CAPACITY", 10_000);
+
+    /** Null until first needed, and after {@link #shutdown}. Guarded by the class. */
+    private static ExecutorService pool;
+
+    /** Set by {@link #shutdown} until the next startup. Guarded by the class. */
+    private static boolean shutDown;
+
+    /** Pending deliveries per step; a key is present while a drain of it is scheduled or running. */
+    private static final Map<StepContext, Deque<Delivery>> queues = new HashMap<>();
+    private static int pending;
+    private static int maxPending;
+
+    private static final AtomicLong delivered = new AtomicLong();
+    private static final AtomicLong inline = new AtomicLong();
+    private static final AtomicLong totalLatencyNanos = new AtomicLong();
+    private static final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    private record Delivery(@NonNull Runnable task, long submitted) {}
+
+    private CompletionDispatcher() {}
+
+    static void submit(@NonNull StepContext context, @NonNull Runnable task) {
+        Delivery delivery = new Delivery(task, System.nanoTime());
+        boolean queued;
+        boolean drain = false;
+        synchronized (queues) {
+            Deque<Delivery> queue = queues.get(context);
+            // If nothing earlier for this step is waiting, running inline keeps the order.
+            queued = queue != null || pending < CAPACITY;
+            if (queued) {
+                if (queue == null) {
+                    queue = new ArrayDeque<>();
+                    queues.put(context, queue);
+                    drain = true;
+                }
+                queue.add(delivery);
+                pending++;
+                maxPending = Math.max(maxPending, pending);
+            }
+        }
+        if (!queued) {
+            inline.incrementAndGet();
+            run(delivery);
+        } else if (drain) {
+            ExecutorService executor = pool();
+            if (executor == null) {
+                drain(context);
+                return;
+            }
+            try {
+                executor.execute(() -> drain(context));
+            } catch (RejectedExecutionException x) {
+                drain(context);
+            }
+        }
+    }
+
+    /** @return null once shutting down */
+    private static synchronized ExecutorService pool() {
+        if (shutDown) {
+            return null;
+        }
+        if (pool == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    new ClassLoaderSanityThreadFactory(new NamingThreadFactory(new DaemonThreadFactory(), "BuildTriggerCompletion")));
+            executor.allowCoreThreadTimeOut(true);
+            pool = new ImpersonatingExecutorService(executor, ACL.SYSTEM2);
+        }
+        return pool;
+    }
+
+    private static void drain(@NonNull StepContext context) {
+        while (true) {
+            Delivery delivery;
+            synchronized (queues) {
+                Deque<Delivery> queue = queues.get(context);
+                delivery = queue != null ? queue.poll() : null;
+                if (delivery == null) {
+                    queues.remove(context);
+                    return;
+                }
+                pending--;
+            }
+            run(delivery);
+        }
+    }
+
+    private static void run(@NonNull Delivery delivery) {
+        long latency = System.nanoTime() - delivery.submitted();
+        totalLatencyNanos.addAndGet(latency);
+        maxLatencyNanos.accumulateAndGet(latency, Math::max);
+        delivered.incrementAndGet();
+        try {
+            delivery.task().run();
+        } catch (RuntimeException x) {
+            LOGGER.log(Level.WARNING, null, x);
+        }
+    }
+
+    /** Number of deliveries waiting to run. */
+    public static int getQueueDepth() {
+        synchronized (queues) {
+            return pending;
+        }
+    }
+
+    /** Highest {@link #getQueueDepth} seen since startup. */
+    public static int getMaxQueueDepth() {
+        synchronized (queues) {
+            return maxPending;
+        }
+    }
+
+    /** Number of deliveries run so far, including those run inline. */
+    public static long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    /** Number of deliveries run inline because {@link #CAPACITY} was reached. */
+    public static long getInlineCount() {
+        return inline.get();
+    }
+
+    /** Mean time from submission to the start of delivery, in milliseconds. */
+    public static double getMeanLatencyMillis() {
+        long count = delivered.get();
+        return count == 0 ? 0 : totalLatencyNanos.get() / 1e6 / count;
+    }
+
+    /** Total time from submission to the start of delivery, in milliseconds. */
+    public static double getTotalLatencyMillis() {
+        return totalLatencyNanos.get() / 1e6;
+    }
+
+    /** Longest time from submission to the start of delivery, in milliseconds. */
+    public static double getMaxLatencyMillis() {
+        return maxLatencyNanos.get() / 1e6;
+    }
+
+    /** Undoes {@link #shutdown} when Jenkins is started again in the same JVM, as in tests. */
+    @Initializer(after = InitMilestone.EXTENSIONS_AUGMENTED)
+    public static synchronized void start() {
+        shutDown = false;
+    }
+
+    /** Gives pending deliveries a chance to run, so that fewer steps need to be reconciled after a restart. */
+    @Terminator
+    public static void shutdown() throws InterruptedException {
+        ExecutorService executor;
+        synchronized (CompletionDispatcher.class) {
+            executor = pool;
+            pool = null;
+            shutDown = true;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        synchronized (queues) {
+            if (pending > 0) {
+                LOGGER.log(Level.WARNING, "{0} downstream build completions were not delivered; they will be reconciled after the restart", pending);
+            }
+            queues.clear();
+            pending = 0;
+        }
+    }
+
+}
@@ -1,60 +1,168 @@
 package org.jenkinsci.plugins.workflow.support.steps.build;
 
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.converters.ConversionException;
+import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.MarshallingContext;
+import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
 import hudson.model.InvisibleAction;
 import hudson.model.Item;
 import hudson.model.ItemGroup;
 import hudson.model.Run;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.springframework.security.access.AccessDeniedException;
 
 /**
  * Tracks downstream builds triggered by the {@code build} step, as well as the {@link FlowNode#getId} of the step.
+ * An orchestrator may trigger thousands of builds of a few jobs, so each job name is kept once per action,
+ * in memory and in {@code build.xml}; see {@link ConverterImpl}.
  *
  * @see BuildUpstreamCause
  */
 public final class DownstreamBuildAction extends InvisibleAction {
+    /**
+     * Guards attaching this action, or a {@link BuildTraceAction}, to a build. Striped by build identity rather than one lock for the whole controller;
+     * not the {@link Run} itself, whose monitor is held while it is saved.
+     */
+    private static final Object[] LOCKS = new Object[64];
+
+    static {
+        for (int i = 0; i < LOCKS.length; i++) {
+            LOCKS[i] = new Object();
+        }
+    }
+
     private final List<DownstreamBuild> downstreamBuilds = new ArrayList<>();
+    /** Index of {@link #downstreamBuilds} by {@link DownstreamBuild#getFlowNodeId} and job, built lazily. */
+    private transient Map<String, DownstreamBuild> downstreamBuildsByKey;
+    /** The one instance of each job name used by {@link #downstreamBuilds}, built lazily. */
+    private transient Map<String, String> jobFullNames;
 
     public static @NonNull DownstreamBuild getOrCreate(@NonNull Run<?, ?> run, @NonNull String flowNodeId, @NonNull Item job) {
-        DownstreamBuildAction downstreamBuildAction;
-        synchronized (DownstreamBuildAction.class) {
-            downstreamBuildAction = run.getAction(DownstreamBuildAction.class);
-            if (downstreamBuildAction == null) {
-                downstreamBuildAction = new DownstreamBuildAction();
-                run.addAction(downstreamBuildAction);
+        return of(run).getOrAddDownstreamBuild(flowNodeId, job.getFullName());
+    }
+
+    /**
+     * Records that a downstream build has started.
+     * Usually fills in the record made by {@link #getOrCreate}, but a step which triggered the same job more than once
+     * ({@link BuildAllStep}) gets one record per build.
+     */
+    static void attach(@NonNull Run<?, ?> run, @NonNull String flowNodeId, @NonNull Run<?, ?> downstream) {
+        of(run).attach(flowNodeId, downstream);
+    }
+
+    /** The lock to hold while checking for an action and attaching it if absent. */
+    static @NonNull Object lockFor(@NonNull Run<?, ?> run) {
+        return LOCKS[Math.floorMod(System.identityHashCode(run), LOCKS.length)];
+    }
+
+    private static @NonNull DownstreamBuildAction of(@NonNull Run<?, ?> run) {
+        DownstreamBuildAction downstreamBuildAction = run.getAction(DownstreamBuildAction.class);
+        if (downstreamBuildAction == null) {
+            synchronized (lockFor(run)) {
+                downstreamBuildAction = run.getAction(DownstreamBuildAction.class);
+                if (downstreamBuildAction == null) {
+                    downstreamBuildAction = new DownstreamBuildAction();
+                    run.addAction(downstreamBuildAction);
+                }
             }
         }
-        return downstreamBuildAction.getOrAddDownstreamBuild(flowNodeId, job);
+        return downstreamBuildAction;
     }
 
     public synchronized @NonNull List<DownstreamBuild> getDownstreamBuilds() {
         return Collections.unmodifiableList(new ArrayList<>(downstreamBuilds));
     }
 
-    private synchronized @NonNull DownstreamBuild getOrAddDownstreamBuild(@NonNull String flowNodeId, @NonNull Item job) {
-        for (DownstreamBuild build : downstreamBuilds) {
-            if (build.getFlowNodeId().equals(flowNodeId)) {
-                return build;
+    private synchronized @NonNull DownstreamBuild getOrAddDownstreamBuild(@NonNull String flowNodeId, @NonNull String jobFullName) {
+        if (downstreamBuildsByKey == null) {
+            downstreamBuildsByKey = new HashMap<>();
+            for (DownstreamBuild build : downstreamBuilds) {
+                downstreamBuildsByKey.putIfAbsent(key(build.getFlowNodeId(), build.getJobFullName()), build);
             }
         }
-        var build = new DownstreamBuild(flowNodeId, job);
-        downstreamBuilds.add(build);
+        String key = key(flowNodeId, jobFullName);
+        DownstreamBuild build = downstreamBuildsByKey.get(key);
+        if (build == null) {
+            build = new DownstreamBuild(flowNodeId, intern(jobFullName));
+            downstreamBuilds.add(build);
+            downstreamBuildsByKey.put(key, build);
+        }
         return build;
     }
 
+    private synchronized void attach(@NonNull String flowNodeId, @NonNull Run<?, ?> downstream) {
+        String jobFullName = downstream.getParent().getFullName();
+        DownstreamBuild build = getOrAddDownstreamBuild(flowNodeId, jobFullName);
+        if (build.buildNumber != DownstreamBuild.NONE && build.buildNumber != downstream.getNumber()) {
+            build = null;
+            for (DownstreamBuild candidate : downstreamBuilds) {
+                if (candidate.getFlowNodeId().equals(flowNodeId) && candidate.getJobFullName().equals(jobFullName)
+                        && (candidate.buildNumber == DownstreamBuild.NONE || candidate.buildNumber == downstream.getNumber())) {
+                    build = candidate;
+                    break;
+                }
+            }
+            if (build == null) {
+                build = new DownstreamBuild(flowNodeId, intern(jobFullName));
+                downstreamBuilds.add(build);
+            }
+        }
+        build.setBuild(downstream);
+    }
+
+    private static String key(String flowNodeId, String jobFullName) {
+        return flowNodeId + '\0' + jobFullName;
+    }
+
+    private synchronized @NonNull String intern(@NonNull String jobFullName) {
+        if (jobFullNames == null) {
+            jobFullNames = new HashMap<>();
+            for (DownstreamBuild build : downstreamBuilds) {
+                jobFullNames.putIfAbsent(build.getJobFullName(), build.getJobFullName());
+            }
+        }
+        return jobFullNames.computeIfAbsent(jobFullName, k -> k);
+    }
+
+    /** Appends a record read by {@link ConverterImpl}. */
+    private synchronized void add(String flowNodeId, @NonNull String jobFullName, @CheckForNull String buildNumber) {
+        DownstreamBuild build = new DownstreamBuild(flowNodeId, jobFullName);
+        if (buildNumber != null) {
+            try {
+                build.buildNumber = Integer.parseInt(buildNumber.trim());
+            } catch (NumberFormatException x) {
+                throw new ConversionException("Bad build number in " + DownstreamBuildAction.class.getName(), x);
+            }
+        }
+        downstreamBuilds.add(build);
+    }
+
     public static final class DownstreamBuild {
+        /** {@link #buildNumber} of a downstream build which has not yet started; real build numbers are positive. */
+        static final int NONE = -1;
+
         private final String flowNodeId;
         private final String jobFullName;
-        private Integer buildNumber;
+        private int buildNumber = NONE;
 
-        DownstreamBuild(String flowNodeId, @NonNull Item job) {
+        DownstreamBuild(String flowNodeId, @NonNull String jobFullName) {
             this.flowNodeId = flowNodeId;
-            this.jobFullName = job.getFullName();
+            this.jobFullName = jobFullName;
         }
 
         public @NonNull String getFlowNodeId() {
@@ -69,7 +177,7 @@ public final class DownstreamBuildAction extends InvisibleAction {
          * Get the build number of the downstream build, or {@code null} if the downstream build has not yet started or the queue item was cancelled.
          */
         public @CheckForNull Integer getBuildNumber() {
-            return buildNumber;
+            return buildNumber == NONE ? null : buildNumber;
         }
 
         /**
@@ -79,7 +187,7 @@ public final class DownstreamBuildAction extends InvisibleAction {
          * @throws AccessDeniedException as per {@link ItemGroup#getItem}
          */
         public @CheckForNull Run<?, ?> getBuild() throws AccessDeniedException {
-            if (buildNumber == null) {
+            if (buildNumber == NONE) {
                 return null;
             }
             return Run.fromExternalizableId(jobFullName + '#' + buildNumber);
@@ -89,4 +197,124 @@ public final class DownstreamBuildAction extends InvisibleAction {
             this.buildNumber = run.getNumber();
         }
     }
+
+    @Restricted(NoExternalUse.class)
+    @Initializer(before = InitMilestone.PLUGINS_STARTED)
+    public static void registerConverter() {
+        Run.XSTREAM2.registerConverter(new ConverterImpl(), XStream.PRIORITY_NORMAL);
+    }
+
+    /**
+     * Writes each job name once, followed by one element per record which refers to it by position:
+     * <pre>{@code
+     * <jobs>
+     *   <job>folder/ds</job>
+     * </jobs>
+     * <builds>
+     *   <build node="12" job="0" number="5"/>
+     * </builds>
+     * }</pre>
+     * {@code number} is omitted for builds which have not started.
+     * Still reads the former {@code <downstreamBuilds>} list with one {@code jobFullName} per record.
+     */
+    static final class ConverterImpl implements Converter {
+
+        @Override
+        public boolean canConvert(Class type) {
+            return type == DownstreamBuildAction.class;
+        }
+
+        @Override
+        public void marshal(Object source, HierarchicalStreamWriter writer, MarshallingContext context) {
+            List<DownstreamBuild> builds = ((DownstreamBuildAction) source).getDownstreamBuilds();
+            Map<String, Integer> jobs = new LinkedHashMap<>();
+            for (DownstreamBuild build : builds) {
+                jobs.putIfAbsent(build.getJobFullName(), jobs.size());
+            }
+            writer.startNode("jobs");
+            for (String job : jobs.keySet()) {
+                writer.startNode("job");
+                writer.setValue(job);
+                writer.endNode();
+            }
+            writer.endNode();
+            writer.startNode("builds");
+            for (DownstreamBuild build : builds) {
+                writer.startNode("build");
+                writer.addAttribute("node", build.getFlowNodeId());
+                writer.addAttribute("job", String.valueOf(jobs.get(build.getJobFullName())));
+                if (build.buildNumber != DownstreamBuild.NONE) {
+                    writer.addAttribute("number", String.valueOf(build.buildNumber));
+                }
+                writer.endNode();
+            }
+            writer.endNode();
+        }
+
+        @Override
+        public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext context) {
+            DownstreamBuildAction action = new DownstreamBuildAction();
+            List<String> jobs = new ArrayList<>();
+            while (reader.hasMoreChildren()) {
+                reader.moveDown();
+                switch (reader.getNodeName()) {
+                case "jobs":
+                    while (reader.hasMoreChildren()) {
+                        reader.moveDown();
+                        jobs.add(action.intern(reader.getValue()));
+                        reader.moveUp();
+                    }
+                    break;
+                case "builds":
+                    while (reader.hasMoreChildren()) {
+                        reader.moveDown();
+                        String job;
+                        try {
+                            job = jobs.get(Integer.parseInt(reader.getAttribute("job")));
+                        } catch (RuntimeException x) {
+                            throw new ConversionException("Bad job index in " + DownstreamBuildAction.class.getName(), x);
+                        }
+                        action.add(reader.getAttribute("node"), job, reader.getAttribute("number"));
+                        reader.moveUp();
+                    }
+                    break;
+                case "downstreamBuilds":
+                    while (reader.hasMoreChildren()) {
+                        reader.moveDown();
+                        String flowNodeId = null;
+                        String jobFullName = null;
+                        String buildNumber = null;
+                        while (reader.hasMoreChildren()) {
+                            reader.moveDown();
+                            switch (reader.getNodeName()) {
+                            case "flowNodeId":
+                                flowNodeId = reader.getValue();
+                                break;
+                            case "jobFullName":
+                                jobFullName = reader.getValue();
+                                break;
+                            case "buildNumber":
+                                buildNumber = reader.getValue();
+                                break;
+                            default:
+                                break;
+                            }
+                            reader.moveUp();
+                        }
+                        if (jobFullName == null) {
+                            throw new ConversionException("Missing jobFullName in " + DownstreamBuildAction.class.getName());
+                        }
+                        action.add(flowNodeId, action.intern(jobFullName), buildNumber);
+                        reader.moveUp();
+                    }
+                    break;
+                default:
+                    break;
+                }
+                reader.moveUp();
+            }
+            return action;
+        }
+
+    }
 }
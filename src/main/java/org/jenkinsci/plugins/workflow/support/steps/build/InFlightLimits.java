@@ -0,0 +1,200 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.model.Queue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+
+/**
+ * Enforces {@link BuildTriggerStep#getMaxInFlight}.
+ * Steps over the limit wait here, in order, rather than as items in the {@link hudson.model.Queue}.
+ * Nothing is persisted here: each {@link BuildTriggerStepExecution} records what it would schedule,
+ * and on resumption either rejoins the waiting list or claims its slot again.
+ * Slots of builds still in the queue are also reclaimed from their {@link BuildTriggerAction.Trigger#throttled} triggers.
+ * Only steps using the option count towards the limit.
+ */
+final class InFlightLimits {
+
+    /** Builds of one downstream job. */
+    private static final class Job {
+
+        /** Steps whose build is scheduled or running. */
+        final Set<StepContext> inFlight = new HashSet<>();
+
+        /** Steps waiting for a slot, with their own limits. */
+        final Deque<Waiting> waiting = new ArrayDeque<>();
+
+        /** {@link System#nanoTime} before which no slots are handed out, set by {@link #resumedWaiting}. */
+        long holdUntil;
+
+        boolean held;
+
+        /** Whether slots are still held back after a restart. */
+        boolean isHeld() {
+            if (held && System.nanoTime() - holdUntil >= 0) {
+                held = false;
+            }
+            return held;
+        }
+
+    }
+
+    private record Waiting(@NonNull BuildTriggerStepExecution execution, int maxInFlight) {}
+
+    /** Milliseconds after a step resumes waiting before slots of its job are handed out again. */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for tests and script console")
+    static long RESUME_DELAY = SystemProperties.getLong(InFlightLimits.class.getName() + ".RESUME_DELAY", TimeUnit.SECONDS.toMillis(30));
+
+    /** Guarded by itself, as are the fields of each {@link Job}. */
+    private static final Map<String, Job> JOBS = new HashMap<>();
+
+    /** Job full name of each step in {@link Job#inFlight}, so that {@link #release} is cheap for other steps. */
+    private static final Map<StepContext, String> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    private InFlightLimits() {}
+
+    /**
+     * Claims a slot, or else queues the step to be notified via {@link BuildTriggerStepExecution#inFlightSlotAvailable}.
+     * @return true if the step may go ahead and schedule its build now
+     */
+    static boolean acquire(@NonNull BuildTriggerStepExecution execution, @NonNull String job, int maxInFlight) {
+        synchronized (JOBS) {
+            Job j = JOBS.computeIfAbsent(job, k -> new Job());
+            if (!j.isHeld() && j.waiting.isEmpty() && j.inFlight.size() < maxInFlight) {
+                j.inFlight.add(execution.getContext());
+                IN_FLIGHT.put(execution.getContext(), job);
+                return true;
+            }
+            j.waiting.add(new Waiting(execution, maxInFlight));
+            return false;
+        }
+    }
+
+    /**
+     * Puts a step which was waiting before a restart back in the waiting list.
+     * The first time for a job, slots of its builds still in the queue are reclaimed at once, since their triggers are persisted.
+     * A build which already started only has its slot back once its step {@linkplain #resumed resumes}, so slots of the job
+     * are only handed out after {@link #RESUME_DELAY}; otherwise the limit would be exceeded depending on which step happened to resume first.
+     * Until then {@link #acquire}, {@link #release} and {@link #withdraw} only queue steps for this job; other jobs are unaffected.
+     */
+    static void resumedWaiting(@NonNull BuildTriggerStepExecution execution, @NonNull String job, int maxInFlight) {
+        synchronized (JOBS) {
+            Job j = JOBS.computeIfAbsent(job, k -> new Job());
+            if (!j.held) {
+                reclaimQueued(job, j);
+            }
+            j.waiting.add(new Waiting(execution, maxInFlight));
+            long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RESUME_DELAY);
+            if (!j.held || until - j.holdUntil > 0) {
+                j.holdUntil = until;
+                j.held = true;
+            }
+        }
+        Timer.get().schedule(InFlightLimits::admitAll, RESUME_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /** Reclaims the slot of a step whose build was already scheduled before a restart. */
+    static void resumed(@NonNull StepContext context, @NonNull String job) {
+        synchronized (JOBS) {
+            JOBS.computeIfAbsent(job, k -> new Job()).inFlight.add(context);
+            IN_FLIGHT.put(context, job);
+        }
+    }
+
+    /** Removes a step from the waiting list, as when it is stopped. */
+    static void withdraw(@NonNull BuildTriggerStepExecution execution) {
+        List<BuildTriggerStepExecution> admitted = new ArrayList<>();
+        synchronized (JOBS) {
+            for (var it = JOBS.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<String, Job> entry = it.next();
+                if (entry.getValue().waiting.removeIf(w -> w.execution() == execution)) {
+                    if (admit(entry.getKey(), entry.getValue(), admitted)) {
+                        it.remove();
+                    }
+                }
+            }
+        }
+        admitted(admitted);
+    }
+
+    /** Frees the slot of a step, if it had one, letting the next waiting step go ahead. */
+    static void release(@NonNull StepContext context) {
+        if (!IN_FLIGHT.containsKey(context)) {
+            return;
+        }
+        List<BuildTriggerStepExecution> admitted = new ArrayList<>();
+        synchronized (JOBS) {
+            String job = IN_FLIGHT.remove(context);
+            if (job == null) {
+                return;
+            }
+            Job j = JOBS.get(job);
+            if (j != null) {
+                j.inFlight.remove(context);
+                if (admit(job, j, admitted)) {
+                    JOBS.remove(job);
+                }
+            }
+        }
+        admitted(admitted);
+    }
+
+    /** Counts queued builds of a job scheduled by steps using the option, whose steps may not have resumed yet. Must hold the lock. */
+    private static void reclaimQueued(@NonNull String name, @NonNull Job j) {
+        for (Queue.Item item : Queue.getInstance().getItems()) {
+            if (item.task instanceof hudson.model.Job && ((hudson.model.Job<?, ?>) item.task).getFullName().equals(name)) {
+                for (BuildTriggerAction.Trigger trigger : BuildTriggerAction.triggersFor(item)) {
+                    if (trigger.throttled && trigger.context != null) {
+                        j.inFlight.add(trigger.context);
+                        IN_FLIGHT.put(trigger.context, name);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves waiting steps into free slots, unless {@linkplain #isHeld held back}. Must hold the lock.
+     * @return true if the job has nothing in flight or waiting, so may be forgotten
+     */
+    private static boolean admit(@NonNull String name, @NonNull Job j, @NonNull List<BuildTriggerStepExecution> admitted) {
+        if (j.isHeld()) {
+            return false;
+        }
+        while (!j.waiting.isEmpty() && j.inFlight.size() < j.waiting.peek().maxInFlight()) {
+            BuildTriggerStepExecution execution = j.waiting.poll().execution();
+            j.inFlight.add(execution.getContext());
+            IN_FLIGHT.put(execution.getContext(), name);
+            admitted.add(execution);
+        }
+        return j.inFlight.isEmpty() && j.waiting.isEmpty();
+    }
+
+    private static void admitAll() {
+        List<BuildTriggerStepExecution> admitted = new ArrayList<>();
+        synchronized (JOBS) {
+            JOBS.entrySet().removeIf(entry -> admit(entry.getKey(), entry.getValue(), admitted));
+        }
+        admitted(admitted);
+    }
+
+    private static void admitted(List<BuildTriggerStepExecution> admitted) {
+        for (BuildTriggerStepExecution execution : admitted) {
+            // Scheduling takes the Queue lock, so do not do it from whatever thread released the slot.
+            Timer.get().submit(execution::inFlightSlotAvailable);
+        }
+    }
+
+}
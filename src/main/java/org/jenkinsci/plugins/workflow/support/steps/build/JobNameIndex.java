@@ -0,0 +1,173 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
+import hudson.model.AutoCompletionCandidates;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Queue;
+import hudson.model.listeners.ItemListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Sorted full names of all buildable items, for {@link BuildTriggerStep.DescriptorImpl#doAutoCompleteJob}.
+ * Candidates for a prefix are a range of the set, and anything nested more deeply than the prefix asks for is skipped over
+ * a folder at a time, so a request costs about as much as the number of candidates rather than the number of items.
+ * Permissions are only checked on candidates about to be offered, up to {@link #LIMIT} of them.
+ * Built on first use and then kept up to date by {@link Updater}.
+ */
+@Restricted(NoExternalUse.class)
+public final class JobNameIndex {
+
+    /** Most candidates offered for one request. */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for tests and script console")
+    static int LIMIT = SystemProperties.getInteger(JobNameIndex.class.getName() + ".LIMIT", 100);
+
+    /** Sorts just after every name beneath a folder, which all continue with {@code /}. */
+    private static final char AFTER_SLASH = '/' + 1;
+
+    /** Null until first used. */
+    private static volatile NavigableSet<String> names;
+
+    private JobNameIndex() {}
+
+    private static @NonNull NavigableSet<String> names() {
+        NavigableSet<String> result = names;
+        if (result == null) {
+            synchronized (JobNameIndex.class) {
+                result = names;
+                if (result == null) {
+                    result = new ConcurrentSkipListSet<>();
+                    try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+                        for (Item item : Jenkins.get().allItems()) {
+                            if (item instanceof Queue.Task) {
+                                result.add(item.getFullName());
+                            }
+                        }
+                    }
+                    names = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Equivalent to the former visit of the item tree: offers names relative to {@code container},
+     * or absolute if {@code value} starts with {@code /}, or relative to some ancestor if it starts with {@code ../}.
+     */
+    static @NonNull AutoCompletionCandidates candidates(@CheckForNull ItemGroup<?> container, @NonNull String value) {
+        AutoCompletionCandidates candidates = new AutoCompletionCandidates();
+        Jenkins jenkins = Jenkins.get();
+        if (container == null) {
+            container = jenkins;
+        }
+        int[] remaining = {LIMIT};
+        add(candidates, remaining, container, "", value);
+        if (container != jenkins) {
+            if (value.startsWith("/")) {
+                add(candidates, remaining, jenkins, "/", value);
+            }
+            ItemGroup<?> group = container;
+            for (StringBuilder p = new StringBuilder("../"); value.startsWith(p.toString()) && group instanceof Item; p.append("../")) {
+                group = ((Item) group).getParent();
+                add(candidates, remaining, group, p.toString(), value);
+            }
+        }
+        return candidates;
+    }
+
+    /** Adds the names of items in {@code group}, written with {@code prefix}, which start with {@code value}. */
+    private static void add(@NonNull AutoCompletionCandidates candidates, int[] remaining, @NonNull ItemGroup<?> group, @NonNull String prefix, @NonNull String value) {
+        if (!value.startsWith(prefix) || (group instanceof Item && !ResolvedItemCache.canRead((Item) group))) {
+            return;
+        }
+        String base = group.getFullName().isEmpty() ? "" : group.getFullName() + '/';
+        String from = base + value.substring(prefix.length());
+        NavigableSet<String> all = names();
+        String name = all.ceiling(from);
+        while (name != null && name.startsWith(from) && remaining[0] > 0) {
+            int slash = name.indexOf('/', from.length());
+            if (slash != -1) {
+                // Nested more deeply than asked for; as before, wait for the user to type the '/'.
+                name = all.ceiling(name.substring(0, slash) + AFTER_SLASH);
+                continue;
+            }
+            Item item;
+            try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+                item = Jenkins.get().getItemByFullName(name);
+            }
+            if (item != null && ResolvedItemCache.canRead(item)) {
+                candidates.add(prefix + name.substring(base.length()));
+                remaining[0]--;
+            }
+            name = all.higher(name);
+        }
+    }
+
+    private static void addTree(@NonNull NavigableSet<String> all, @NonNull Item item) {
+        if (item instanceof Queue.Task) {
+            all.add(item.getFullName());
+        }
+        if (item instanceof ItemGroup) {
+            for (Item child : ((ItemGroup<?>) item).getItems()) {
+                addTree(all, child);
+            }
+        }
+    }
+
+    private static void removeTree(@NonNull NavigableSet<String> all, @NonNull String fullName) {
+        all.remove(fullName);
+        all.subSet(fullName + '/', fullName + AFTER_SLASH).clear();
+    }
+
+    @Extension
+    public static final class Updater extends ItemListener {
+
+        @Override
+        public void onLoaded() {
+            names = null;
+        }
+
+        @Override
+        public void onCreated(Item item) {
+            NavigableSet<String> all = names;
+            if (all != null) {
+                addTree(all, item);
+            }
+        }
+
+        @Override
+        public void onCopied(Item src, Item item) {
+            onCreated(item);
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            NavigableSet<String> all = names;
+            if (all != null) {
+                removeTree(all, item.getFullName());
+            }
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            NavigableSet<String> all = names;
+            if (all != null) {
+                removeTree(all, oldFullName);
+                addTree(all, item);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,159 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.BooleanParameterDefinition;
+import hudson.model.BooleanParameterValue;
+import hudson.model.ChoiceParameterDefinition;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.ParameterDefinition;
+import hudson.model.ParameterValue;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.Saveable;
+import hudson.model.SimpleParameterDefinition;
+import hudson.model.StringParameterDefinition;
+import hudson.model.StringParameterValue;
+import hudson.model.TextParameterDefinition;
+import hudson.model.TextParameterValue;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Per-job analysis of parameter definitions used by {@link BuildTriggerStepExecution#completeDefaultParameters},
+ * so that a job triggered many times does not have its definitions classified, and simple defaults recomputed, on every build.
+ * {@link ParameterValue}s are mutable, so only the data of a default is cached and each build gets a fresh value built from it.
+ * Entries are dropped when the job is saved, renamed, or deleted, and ignored if its {@link ParametersDefinitionProperty}
+ * has since been replaced.
+ */
+@Restricted(NoExternalUse.class)
+public final class ParameterDefinitionCache {
+
+    /**
+     * Definition types whose {@link ParameterDefinition#getDefaultParameterValue} depends only on the configuration.
+     * Exact classes only, since subclasses may compute defaults dynamically.
+     */
+    private static final Set<Class<?>> STATIC_DEFAULT_CLASSES = Set.of(
+            StringParameterDefinition.class, BooleanParameterDefinition.class, TextParameterDefinition.class);
+
+    /** Keyed by {@link Job#getFullName}; not weak, since each entry refers back to its job. */
+    private static final Map<String, Entry> CACHE = new ConcurrentHashMap<>();
+
+    /** What {@link BuildTriggerStepExecution#completeDefaultParameters} needs to know about one definition. */
+    static final class Definition {
+
+        final @NonNull ParameterDefinition definition;
+
+        /** Whether a {@link hudson.model.StringParameterValue} passed for this definition should be converted. */
+        final boolean convertible;
+
+        /** Whether a type mismatch is expected, so conversion should not be reported. */
+        final boolean choiceLike;
+
+        /** Makes a new copy of the default, if the definition is one of {@link #STATIC_DEFAULT_CLASSES}. */
+        private final @CheckForNull Supplier<ParameterValue> staticDefault;
+
+        Definition(@NonNull ParameterDefinition definition, @NonNull Set<String> choiceLikeClasses) {
+            this.definition = definition;
+            convertible = definition instanceof SimpleParameterDefinition && !(definition instanceof StringParameterDefinition) && !(definition instanceof ChoiceParameterDefinition);
+            choiceLike = choiceLikeClasses.contains(definition.getClass().getName());
+            staticDefault = STATIC_DEFAULT_CLASSES.contains(definition.getClass()) ? staticDefault(definition.getDefaultParameterValue()) : null;
+        }
+
+        /** @return a value not shared with any other build */
+        @CheckForNull ParameterValue getDefaultParameterValue() {
+            return staticDefault != null ? staticDefault.get() : definition.getDefaultParameterValue();
+        }
+
+        private static @CheckForNull Supplier<ParameterValue> staticDefault(@CheckForNull ParameterValue prototype) {
+            if (prototype == null) {
+                return null;
+            }
+            String name = prototype.getName();
+            String description = prototype.getDescription();
+            // TextParameterValue first, as it extends StringParameterValue.
+            if (prototype instanceof TextParameterValue) {
+                String value = ((TextParameterValue) prototype).getValue();
+                return () -> new TextParameterValue(name, value, description);
+            } else if (prototype instanceof StringParameterValue) {
+                String value = ((StringParameterValue) prototype).getValue();
+                return () -> new StringParameterValue(name, value, description);
+            } else if (prototype instanceof BooleanParameterValue) {
+                boolean value = ((BooleanParameterValue) prototype).getValue();
+                return () -> new BooleanParameterValue(name, value, description);
+            }
+            return null;
+        }
+
+    }
+
+    private record Entry(@NonNull ParametersDefinitionProperty property, @NonNull List<ParameterDefinition> source, @NonNull List<Definition> definitions) {}
+
+    private ParameterDefinitionCache() {}
+
+    /**
+     * Looks up (or computes) the analyzed definitions of a job.
+     * @return an unmodifiable list, empty if the job is not parameterized
+     */
+    static @NonNull List<Definition> definitions(@NonNull Job<?, ?> job, @NonNull Set<String> choiceLikeClasses) {
+        ParametersDefinitionProperty pdp = job.getProperty(ParametersDefinitionProperty.class);
+        if (pdp == null) {
+            return Collections.emptyList();
+        }
+        List<ParameterDefinition> source = pdp.getParameterDefinitions();
+        Entry entry = CACHE.get(job.getFullName());
+        if (entry != null && entry.property() == pdp && entry.source() == source) {
+            return entry.definitions();
+        }
+        List<Definition> definitions = new ArrayList<>(source.size());
+        for (ParameterDefinition pDef : source) {
+            definitions.add(new Definition(pDef, choiceLikeClasses));
+        }
+        definitions = Collections.unmodifiableList(definitions);
+        CACHE.put(job.getFullName(), new Entry(pdp, source, definitions));
+        return definitions;
+    }
+
+    static void invalidate(@NonNull String fullName) {
+        CACHE.remove(fullName);
+    }
+
+    @Extension
+    public static final class Invalidator extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof Job) {
+                invalidate(((Job<?, ?>) o).getFullName());
+            }
+        }
+
+    }
+
+    @Extension
+    public static final class Cleaner extends ItemListener {
+
+        @Override
+        public void onDeleted(Item item) {
+            invalidate(item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            invalidate(oldFullName);
+        }
+
+    }
+
+}
@@ -0,0 +1,71 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import jenkins.util.Timer;
+
+/**
+ * Deadlines of {@code build} steps using {@link BuildTriggerStep#getQueueTimeout}.
+ * All are kept in one priority queue, with a single {@link Timer} task armed for the earliest.
+ */
+final class QueueTimeouts {
+
+    private record Deadline(long time, @NonNull BuildTriggerStepExecution execution) {}
+
+    private static final PriorityQueue<Deadline> deadlines = new PriorityQueue<>(Comparator.comparingLong(Deadline::time));
+    private static ScheduledFuture<?> wakeup;
+    private static long wakeupTime;
+
+    private QueueTimeouts() {}
+
+    /**
+     * Arranges for {@link BuildTriggerStepExecution#queueTimeoutExpired} to be called.
+     * @param time a {@link System#currentTimeMillis} value, possibly in the past
+     */
+    static void schedule(@NonNull BuildTriggerStepExecution execution, long time) {
+        synchronized (deadlines) {
+            deadlines.add(new Deadline(time, execution));
+            if (wakeup == null || time < wakeupTime) {
+                arm(time);
+            }
+        }
+    }
+
+    /** Forgets the deadline of a step which no longer needs it, so that the execution is not kept in memory until then. */
+    static void cancel(@NonNull BuildTriggerStepExecution execution) {
+        synchronized (deadlines) {
+            deadlines.removeIf(d -> d.execution() == execution);
+        }
+    }
+
+    private static void arm(long time) {
+        if (wakeup != null) {
+            wakeup.cancel(false);
+        }
+        wakeupTime = time;
+        wakeup = Timer.get().schedule(QueueTimeouts::expire, Math.max(0, time - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    private static void expire() {
+        List<BuildTriggerStepExecution> expired = new ArrayList<>();
+        synchronized (deadlines) {
+            wakeup = null;
+            long now = System.currentTimeMillis();
+            while (!deadlines.isEmpty() && deadlines.peek().time() <= now) {
+                expired.add(deadlines.poll().execution());
+            }
+            if (!deadlines.isEmpty()) {
+                arm(deadlines.peek().time());
+            }
+        }
+        for (BuildTriggerStepExecution execution : expired) {
+            execution.queueTimeoutExpired();
+        }
+    }
+
+}
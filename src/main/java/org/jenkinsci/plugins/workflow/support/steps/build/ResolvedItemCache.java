@@ -0,0 +1,103 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.listeners.ItemListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Remembers what a job name passed to {@code build} resolves to from a given upstream job,
+ * so that pipelines triggering the same jobs over and over do not walk the folder hierarchy each time.
+ * Resolution is cached as seen by {@link ACL#SYSTEM2}; on each use the caller must still be able to read the item and
+ * its folders, otherwise the lookup is redone without the cache so that the outcome matches {@link Jenkins#getItem(String, Item, Class)}.
+ * Any item being created, copied, renamed, moved or deleted clears the cache, since that can change what a relative name refers to.
+ */
+@Restricted(NoExternalUse.class)
+public final class ResolvedItemCache {
+
+    /** Maximum number of (upstream job, name) pairs remembered. */
+    private static final long SIZE = SystemProperties.getLong(ResolvedItemCache.class.getName() + ".SIZE", 1000L);
+
+    private record Key(@NonNull String context, @NonNull String name) {}
+
+    private static final Cache<Key, Item> CACHE = CacheBuilder.newBuilder().maximumSize(SIZE).build();
+
+    private ResolvedItemCache() {}
+
+    /**
+     * Equivalent to {@code Jenkins.get().getItem(name, context, Item.class)}, for example with the upstream job as context.
+     * @param context null to resolve from the root, as for the snippet generator outside any job
+     */
+    static @CheckForNull Item resolve(@NonNull String name, @CheckForNull Item context) {
+        Key key = new Key(context != null ? context.getFullName() : "", name);
+        Item item = CACHE.getIfPresent(key);
+        if (item != null) {
+            if (canRead(item)) {
+                return item;
+            }
+            return Jenkins.get().getItem(name, context, Item.class);
+        }
+        try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+            item = Jenkins.get().getItem(name, context, Item.class);
+        }
+        if (item == null) {
+            return null;
+        }
+        CACHE.put(key, item);
+        return canRead(item) ? item : Jenkins.get().getItem(name, context, Item.class);
+    }
+
+    /** Whether the current user can read the item and each of its folders. */
+    static boolean canRead(@NonNull Item item) {
+        for (Object i = item; i instanceof Item; i = ((Item) i).getParent()) {
+            if (!((Item) i).hasPermission(Item.READ)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void clear() {
+        CACHE.invalidateAll();
+    }
+
+    @Extension
+    public static final class Invalidator extends ItemListener {
+
+        @Override
+        public void onCreated(Item item) {
+            clear();
+        }
+
+        @Override
+        public void onCopied(Item src, Item item) {
+            clear();
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            clear();
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            clear();
+        }
+
+        @Override
+        public void onLoaded() {
+            clear();
+        }
+
+    }
+
+}
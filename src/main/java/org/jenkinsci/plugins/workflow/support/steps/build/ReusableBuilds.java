@@ -0,0 +1,124 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Action;
+import hudson.model.Job;
+import hudson.model.ParameterValue;
+import hudson.model.ParametersAction;
+import hudson.model.Run;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Index of running builds by job and parameter set, for {@link BuildTriggerStep#isReuse}.
+ * Identical requests for a build still in the queue are already folded together by {@link BuildTriggerAction#foldIntoExisting};
+ * this covers the case that the build has started.
+ * <p>Only jobs for which reuse has been requested are indexed, so other builds cost one set lookup.
+ * A build of such a job is indexed from {@link BuildTriggerListener#onStarted} until {@link BuildTriggerListener#onCompleted}.
+ * Since the latter precedes {@link BuildTriggerListener#onFinalized}, and {@link #join} attaches the trigger while holding the entry
+ * that {@link #completed} must remove, a trigger added by {@link #join} is always seen when the result is delivered.
+ * Like {@link BuildTriggerRegistry} this is only a hint: it is not persisted, so builds running across a restart are not found.
+ */
+final class ReusableBuilds {
+
+    private static final Logger LOGGER = Logger.getLogger(ReusableBuilds.class.getName());
+
+    /**
+     * Parameters are compared as a set, as by {@link ParametersAction#shouldSchedule}.
+     * Each {@link ParameterValue} hashes on its name and value, so the lookup costs about as much as the parameter list is long.
+     */
+    private record Key(@NonNull String job, @NonNull Set<ParameterValue> parameters) {}
+
+    /** Full names of jobs which some step has asked to reuse a build of. */
+    private static final Set<String> JOBS = ConcurrentHashMap.newKeySet();
+
+    private static final Map<Key, Run<?, ?>> RUNNING = new ConcurrentHashMap<>();
+
+    private ReusableBuilds() {}
+
+    static void started(@NonNull Run<?, ?> run) {
+        if (JOBS.contains(run.getParent().getFullName())) {
+            RUNNING.put(key(run), run);
+        }
+    }
+
+    static void completed(@NonNull Run<?, ?> run) {
+        if (JOBS.contains(run.getParent().getFullName())) {
+            RUNNING.remove(key(run), run);
+        }
+    }
+
+    /**
+     * Looks for a running build of a job with the given parameters, and if there is one, attaches a trigger to it.
+     * @param parameters the complete parameter list the step would schedule with, including defaults
+     * @param trigger the step's trigger, if waiting for completion
+     * @return the build now being reused, or null if there is none and a new build should be scheduled
+     */
+    static @CheckForNull Run<?, ?> join(@NonNull Job<?, ?> job, @NonNull List<ParameterValue> parameters, @CheckForNull BuildTriggerAction.Trigger trigger) {
+        if (JOBS.add(job.getFullName())) {
+            // Builds which started before the job was first asked for.
+            for (Run<?, ?> run = job.getLastBuild(); run != null && run.isBuilding(); run = run.getPreviousBuildInProgress()) {
+                Key key = key(run);
+                RUNNING.putIfAbsent(key, run);
+                if (!run.isBuilding()) {
+                    // Completed meanwhile, perhaps before completed(run) could see the job.
+                    RUNNING.remove(key, run);
+                }
+            }
+        }
+        Key key = new Key(job.getFullName(), Set.copyOf(parameters));
+        boolean[] attached = new boolean[1];
+        // Attached while holding the entry, so that completed(run) cannot remove it in between.
+        Run<?, ?> joined = RUNNING.computeIfPresent(key, (k, run) -> {
+            if (!run.isBuilding()) {
+                // Missed onCompleted, for example because the build was deleted while running.
+                return null;
+            }
+            if (trigger != null) {
+                trigger.scheduled();
+                BuildTriggerAction existing = null;
+                for (Action a : run.getActions()) {
+                    if (a instanceof BuildTriggerAction) {
+                        existing = (BuildTriggerAction) a;
+                        break;
+                    }
+                }
+                if (existing == null) {
+                    run.addAction(new BuildTriggerAction(trigger));
+                } else {
+                    existing.addAll(Collections.singletonList(trigger));
+                }
+                attached[0] = true;
+            }
+            return run;
+        });
+        if (attached[0]) {
+            // So that the trigger survives a restart before the build completes.
+            try {
+                joined.save();
+            } catch (IOException x) {
+                LOGGER.log(Level.WARNING, "failed to save trigger on " + joined, x);
+            }
+        }
+        return joined;
+    }
+
+    private static @NonNull Key key(@NonNull Run<?, ?> run) {
+        Set<ParameterValue> parameters = new HashSet<>();
+        for (Action a : run.getActions()) {
+            if (a instanceof ParametersAction) {
+                parameters.addAll(((ParametersAction) a).getParameters());
+            }
+        }
+        return new Key(run.getParent().getFullName(), parameters);
+    }
+
+}
@@ -0,0 +1,91 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.init.Terminator;
+import hudson.model.Run;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Write-behind saving of upstream builds whose {@link DownstreamBuildAction} was updated.
+ * A fan-out of hundreds of downstream builds would otherwise rewrite the upstream {@code build.xml} once per build;
+ * instead each dirty build is saved at most once per {@link #INTERVAL}, as well as when it is finalized and when
+ * Jenkins shuts down.
+ */
+@Restricted(NoExternalUse.class)
+public final class UpstreamRunSaver {
+
+    private static final Logger LOGGER = Logger.getLogger(UpstreamRunSaver.class.getName());
+
+    /** Minimum time between saves of a given build, in milliseconds; zero or less to save synchronously. */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for tests and script console")
+    static long INTERVAL = SystemProperties.getLong(UpstreamRunSaver.class.getName() + ".INTERVAL", TimeUnit.SECONDS.toMillis(5));
+
+    private static final Set<Run<?, ?>> dirty = ConcurrentHashMap.newKeySet();
+    private static final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private UpstreamRunSaver() {}
+
+    static void markDirty(@NonNull Run<?, ?> run) {
+        if (INTERVAL <= 0) {
+            save(run);
+            return;
+        }
+        dirty.add(run);
+        if (flushScheduled.compareAndSet(false, true)) {
+            Timer.get().schedule(UpstreamRunSaver::flushAll, INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Saves the build now if it has pending changes. */
+    static void flush(@NonNull Run<?, ?> run) {
+        if (dirty.remove(run)) {
+            save(run);
+        }
+    }
+
+    /** Drops pending changes of a build which has been deleted, so that it is not written back. */
+    static void deleted(@NonNull Run<?, ?> run) {
+        dirty.remove(run);
+    }
+
+    static boolean isDirty(@NonNull Run<?, ?> run) {
+        return dirty.contains(run);
+    }
+
+    /**
+     * Saves every build with pending changes.
+     * Also clears the scheduled flag, so that a flush task which never ran (say because the {@link Timer} was shut
+     * down first) does not stop later changes from being scheduled.
+     */
+    @Terminator
+    public static void flushAll() {
+        flushScheduled.set(false);
+        for (Run<?, ?> run : dirty) {
+            flush(run);
+        }
+    }
+
+    private static void save(@NonNull Run<?, ?> run) {
+        if (!run.getRootDir().isDirectory()) {
+            // Deleted meanwhile; saving would bring back a stray build.xml.
+            return;
+        }
+        try {
+            run.save();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, e, () -> "Unable to save DownstreamBuildAction for " + run);
+        }
+    }
+
+}
@@ -1,15 +1,31 @@
 package org.jenkinsci.plugins.workflow.support.steps.build;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import hudson.model.InvisibleAction;
+import java.util.List;
 import org.jenkinsci.plugins.workflow.steps.StepContext;
 
 public class WaitForBuildAction  extends InvisibleAction {
 
     final StepContext context;
     final boolean propagate;
+    /** As in {@link BuildTriggerAction.Trigger#summaryVariables}. */
+    final @CheckForNull List<String> summaryVariables;
+    /** If set, the ID under which a {@link WaitForBuildsStepExecution} waits for this build, rather than a {@link WaitForBuildStep}. */
+    final @CheckForNull String key;
 
     WaitForBuildAction(StepContext context, boolean propagate) {
+        this(context, propagate, null);
+    }
+
+    WaitForBuildAction(StepContext context, boolean propagate, @CheckForNull List<String> summaryVariables) {
+        this(context, propagate, summaryVariables, null);
+    }
+
+    WaitForBuildAction(StepContext context, boolean propagate, @CheckForNull List<String> summaryVariables, @CheckForNull String key) {
         this.context = context;
         this.propagate = propagate;
+        this.summaryVariables = summaryVariables;
+        this.key = key;
     }
 }
@@ -1,14 +1,19 @@
 package org.jenkinsci.plugins.workflow.support.steps.build;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.AbortException;
 import hudson.Extension;
 import hudson.console.ModelHyperlinkNote;
+import hudson.model.Executor;
 import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.model.listeners.RunListener;
 import jenkins.util.Timer;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jenkinsci.plugins.workflow.actions.WarningAction;
@@ -21,39 +26,105 @@ public class WaitForBuildListener extends RunListener<Run<?,?>> {
 
     private static final Logger LOGGER = Logger.getLogger(WaitForBuildListener.class.getName());
 
+    /**
+     * Executor of each running build, so that {@code propagateAbort} need not look for it on every computer.
+     * Builds resumed after a restart are not started again, so are missing here.
+     */
+    private static final Map<Run<?, ?>, Executor> EXECUTORS = new ConcurrentHashMap<>();
+
+    /** Finds the executor of a running build, preferably without scanning all computers as {@link Run#getExecutor} does. */
+    static @CheckForNull Executor executorOf(@NonNull Run<?, ?> run) {
+        Executor executor = EXECUTORS.get(run);
+        return executor != null ? executor : run.getExecutor();
+    }
+
+    @Override
+    public void onStarted(Run<?, ?> run, TaskListener listener) {
+        Executor executor = Executor.currentExecutor();
+        if (executor != null) {
+            EXECUTORS.put(run, executor);
+        }
+    }
+
+    @Override
+    public void onCompleted(Run<?, ?> run, @NonNull TaskListener listener) {
+        EXECUTORS.remove(run);
+    }
+
     @Override
     public void onFinalized(Run<?,?> run) {
+        long finalizedAt = System.currentTimeMillis();
         for (WaitForBuildAction action : run.getActions(WaitForBuildAction.class)) {
-            StepContext context = action.context;
-            LOGGER.log(Level.FINE, "completing {0} for {1}", new Object[] {run, context});
+            deliver(run, action, finalizedAt);
+        }
+    }
 
-            Result result = run.getResult();
-            if (result == null) { /* probably impossible */
-                result = Result.FAILURE;
+    /**
+     * Reports a build to a {@link WaitForBuildStep} if {@link #onFinalized} has not already done so, as when the report was lost in a restart.
+     * @return whether the build was reported now
+     */
+    static boolean reconcile(@NonNull Run<?, ?> run, @NonNull StepContext context) {
+        for (WaitForBuildAction action : run.getActions(WaitForBuildAction.class)) {
+            if (action.context.equals(context) && action.key == null) {
+                deliver(run, action, System.currentTimeMillis());
+                return true;
             }
-            try {
-                context.get(TaskListener.class).getLogger().println("Build " + ModelHyperlinkNote.encodeTo("/" + run.getUrl(), run.getFullDisplayName()) + " completed: " + result.toString());
-                if (action.propagate && result.isWorseThan(Result.SUCCESS)) {
-                    context.get(FlowNode.class).addOrReplaceAction(new WarningAction(result));
-                }
-            } catch (Exception e) {
-                LOGGER.log(Level.WARNING, null, e);
+        }
+        return false;
+    }
+
+    /**
+     * The action stays on the build until the delivery actually runs, so that if Jenkins stops first,
+     * {@code build.xml} still has it for {@link BuildTriggerReconciler}.
+     * Only whoever removes it reports the build, so it is never reported twice.
+     */
+    private static void deliver(@NonNull Run<?, ?> run, @NonNull WaitForBuildAction action, long finalizedAt) {
+        CompletionDispatcher.submit(action.context, () -> {
+            if (run.removeAction(action)) {
+                completed(run, action, finalizedAt);
             }
+        });
+    }
 
-            if (!action.propagate || result == Result.SUCCESS) {
-                context.onSuccess(new RunWrapper(run, false));
-            } else {
-                context.onFailure(new FlowInterruptedException(result, false, new DownstreamFailureCause(run)));
+    private static void completed(Run<?, ?> run, WaitForBuildAction action, long finalizedAt) {
+        StepContext context = action.context;
+        LOGGER.log(Level.FINE, "completing {0} for {1}", new Object[] {run, context});
+
+        Result result = run.getResult();
+        if (result == null) { /* probably impossible */
+            result = Result.FAILURE;
+        }
+        try {
+            context.get(TaskListener.class).getLogger().println("Build " + ModelHyperlinkNote.encodeTo("/" + run.getUrl(), run.getFullDisplayName()) + " completed: " + result.toString());
+            if (action.propagate && result.isWorseThan(Result.SUCCESS)) {
+                context.get(FlowNode.class).addOrReplaceAction(new WarningAction(result));
+            }
+            BuildTriggerLatency latency = BuildTriggerLatency.waited(run, finalizedAt);
+            if (action.key == null) {
+                context.get(FlowNode.class).addOrReplaceAction(latency);
             }
+            BuildTriggerLatencyListener.fire(latency);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, null, e);
+        }
+
+        if (action.key != null) {
+            WaitForBuildsStepExecution.completed(context, action.key, run);
+        } else if (!action.propagate || result == Result.SUCCESS) {
+            context.onSuccess(BuildSummary.of(run, action.summaryVariables));
+        } else {
+            context.onFailure(new FlowInterruptedException(result, false, new DownstreamFailureCause(run)));
         }
-        run.removeActions(WaitForBuildAction.class);
     }
 
     @Override
     public void onDeleted(final Run<?,?> run) {
+        EXECUTORS.remove(run);
         for (WaitForBuildAction action : run.getActions(WaitForBuildAction.class)) {
             Timer.get().submit(() -> {
-                if (action.context.isReady()) {
+                if (action.key != null) {
+                    WaitForBuildsStepExecution.failed(action.context, action.key, new AbortException(run.getFullDisplayName() + " was deleted"));
+                } else if (action.context.isReady()) {
                     action.context.onFailure(new AbortException(run.getFullDisplayName() + " was deleted"));
                 }
             });
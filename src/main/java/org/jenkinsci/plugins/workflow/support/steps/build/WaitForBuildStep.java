@@ -8,6 +8,7 @@ import hudson.model.TaskListener;
 import hudson.util.FormValidation;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
 import org.jenkinsci.plugins.workflow.steps.Step;
@@ -24,6 +25,8 @@ public class WaitForBuildStep extends Step {
     private final String runId;
     private boolean propagate = false;
     private boolean propagateAbort = false;
+    private BuildSummary.ReturnMode returnMode = BuildSummary.ReturnMode.RUN;
+    private List<String> summaryVariables;
 
     @DataBoundConstructor
     public WaitForBuildStep(String runId) {
@@ -50,6 +53,23 @@ public class WaitForBuildStep extends Step {
         this.propagateAbort = propagateAbort;
     }
 
+    public BuildSummary.ReturnMode getReturnMode() {
+        return returnMode;
+    }
+
+    @DataBoundSetter public void setReturnMode(BuildSummary.ReturnMode returnMode) {
+        this.returnMode = returnMode;
+    }
+
+    /** Names of build variables to copy into the {@link BuildSummary}, if {@link #getReturnMode} asks for one. */
+    public List<String> getSummaryVariables() {
+        return summaryVariables;
+    }
+
+    @DataBoundSetter public void setSummaryVariables(List<String> summaryVariables) {
+        this.summaryVariables = summaryVariables;
+    }
+
     @Override
     public StepExecution start(StepContext context) throws Exception {
         return new WaitForBuildStepExecution(this, context);
@@ -3,13 +3,12 @@ package org.jenkinsci.plugins.workflow.support.steps.build;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.AbortException;
 import hudson.console.ModelHyperlinkNote;
-import hudson.model.Computer;
 import hudson.model.Executor;
-import hudson.model.Queue;
 import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
-import jenkins.model.Jenkins;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
 
 import org.jenkinsci.plugins.workflow.actions.LabelAction;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
@@ -29,9 +28,15 @@ public class WaitForBuildStepExecution extends AbstractStepExecutionImpl {
 
     private final transient WaitForBuildStep step;
 
+    /** {@link WaitForBuildStep#getRunId}, kept since {@link #step} is not available after a restart. Null if saved by an older version. */
+    private final String runId;
+    private final boolean propagateAbort;
+
     public WaitForBuildStepExecution(WaitForBuildStep step, @NonNull StepContext context) {
         super(context);
         this.step = step;
+        this.runId = step.getRunId();
+        this.propagateAbort = step.isPropagateAbort();
     }
 
     @SuppressWarnings("rawtypes")
@@ -48,7 +53,7 @@ public class WaitForBuildStepExecution extends AbstractStepExecutionImpl {
         String runHyperLink = ModelHyperlinkNote.encodeTo("/" + run.getUrl(), run.getFullDisplayName());
         TaskListener taskListener = getContext().get(TaskListener.class);
         if (run.isBuilding()) {
-            run.addAction(new WaitForBuildAction(getContext(), step.isPropagate()));
+            run.addAction(new WaitForBuildAction(getContext(), step.isPropagate(), BuildTriggerStepExecution.summaryVariables(step.getReturnMode(), step.getSummaryVariables())));
             taskListener.getLogger().println("Waiting for " + runHyperLink + " to complete");
             return false;
         } else {
@@ -63,7 +68,7 @@ public class WaitForBuildStepExecution extends AbstractStepExecutionImpl {
 
             StepContext context = getContext();
             if (!step.isPropagate() || result == Result.SUCCESS) {
-                context.onSuccess(new RunWrapper(run, false));
+                context.onSuccess(BuildSummary.of(run, BuildTriggerStepExecution.summaryVariables(step.getReturnMode(), step.getSummaryVariables())));
             } else {
                 context.onFailure(new FlowInterruptedException(result, false, new DownstreamFailureCause(run)));
             }
@@ -71,25 +76,35 @@ public class WaitForBuildStepExecution extends AbstractStepExecutionImpl {
         }
     }
 
-    @Override
-    public void stop(@NonNull Throwable cause) throws Exception {
-        StepContext context = getContext();
-        Jenkins jenkins = Jenkins.getInstanceOrNull();
-        if (jenkins == null) {
-            context.onFailure(cause);
-            return;
+    /**
+     * Called by {@link BuildTriggerReconciler} once the step has resumed after a restart.
+     * @return whether the build had already finished without the step being told, and now has been
+     */
+    boolean reconcile() {
+        if (runId == null) {
+            return false;
+        }
+        Run<?, ?> run;
+        try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+            run = Run.fromExternalizableId(runId);
         }
+        return run != null && !run.isLogUpdated() && WaitForBuildListener.reconcile(run, getContext());
+    }
 
+    @Override
+    public void stop(@NonNull Throwable cause) throws Exception {
         boolean interrupted = false;
 
-        if (step.isPropagateAbort()) {
-            // if there's any in-progress build already, abort that.
+        if (propagateAbort && runId != null) {
+            // if the build is still in progress, abort it.
             // when the build is actually aborted, WaitForBuildListener will take notice and report the failure,
             // so this method shouldn't call getContext().onFailure()
-            for (Computer c : jenkins.getComputers()) {
-                for (Executor e : c.getAllExecutors()) {
-                interrupted |= maybeInterrupt(e, cause, context);
-                }
+            Run<?, ?> run;
+            try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+                run = Run.fromExternalizableId(runId);
+            }
+            if (run != null && run.isBuilding()) {
+                interrupted = maybeInterrupt(run, cause, getContext());
             }
         }
 
@@ -98,24 +113,23 @@ public class WaitForBuildStepExecution extends AbstractStepExecutionImpl {
         }
     }
 
-    private static boolean maybeInterrupt(Executor e, Throwable cause, StepContext context) throws IOException, InterruptedException {
-        boolean interrupted = false;
-        Queue.Executable exec = e.getCurrentExecutable();
-        if (exec instanceof Run) {
-            Run<?, ?> downstream = (Run<?, ?>) exec;
-            for(WaitForBuildAction waitForBuildAction : downstream.getActions(WaitForBuildAction.class)) {
-                if (waitForBuildAction.context.equals(context)) {
-                    e.interrupt(Result.ABORTED, new BuildTriggerCancelledCause(cause));
-                    try {
-                        downstream.save();
-                    } catch (IOException x) {
-                        LOGGER.log(Level.WARNING, "failed to save interrupt cause on " + exec, x);
-                    }
-                    interrupted = true;
+    private static boolean maybeInterrupt(Run<?, ?> downstream, Throwable cause, StepContext context) {
+        for (WaitForBuildAction waitForBuildAction : downstream.getActions(WaitForBuildAction.class)) {
+            if (waitForBuildAction.context.equals(context)) {
+                Executor e = WaitForBuildListener.executorOf(downstream);
+                if (e == null) {
+                    return false;
+                }
+                e.interrupt(Result.ABORTED, new BuildTriggerCancelledCause(cause));
+                try {
+                    downstream.save();
+                } catch (IOException x) {
+                    LOGGER.log(Level.WARNING, "failed to save interrupt cause on " + downstream, x);
                 }
+                return true;
             }
         }
-        return interrupted;
+        return false;
     }
 
 }
@@ -0,0 +1,108 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * Waits for several builds at once, as a lighter alternative to {@code parallel} branches each running {@link WaitForBuildStep}.
+ */
+public class WaitForBuildsStep extends Step {
+
+    private final List<String> runIds;
+    private BuildAllStep.Mode mode = BuildAllStep.Mode.ALL;
+    private boolean propagate = false;
+    private boolean propagateAbort = false;
+    private BuildSummary.ReturnMode returnMode = BuildSummary.ReturnMode.RUN;
+    private List<String> summaryVariables;
+
+    @DataBoundConstructor
+    public WaitForBuildsStep(List<String> runIds) {
+        this.runIds = runIds;
+    }
+
+    public List<String> getRunIds() {
+        return runIds;
+    }
+
+    public BuildAllStep.Mode getMode() {
+        return mode;
+    }
+
+    @DataBoundSetter public void setMode(BuildAllStep.Mode mode) {
+        this.mode = mode;
+    }
+
+    public boolean isPropagate() {
+        return propagate;
+    }
+
+    @DataBoundSetter public void setPropagate(boolean propagate) {
+        this.propagate = propagate;
+    }
+
+    public boolean isPropagateAbort() {
+        return propagateAbort;
+    }
+
+    @DataBoundSetter public void setPropagateAbort(boolean propagateAbort) {
+        this.propagateAbort = propagateAbort;
+    }
+
+    public BuildSummary.ReturnMode getReturnMode() {
+        return returnMode;
+    }
+
+    @DataBoundSetter public void setReturnMode(BuildSummary.ReturnMode returnMode) {
+        this.returnMode = returnMode;
+    }
+
+    /** As in {@link WaitForBuildStep#getSummaryVariables}. */
+    public List<String> getSummaryVariables() {
+        return summaryVariables;
+    }
+
+    @DataBoundSetter public void setSummaryVariables(List<String> summaryVariables) {
+        this.summaryVariables = summaryVariables;
+    }
+
+    @Override
+    public StepExecution start(StepContext context) throws Exception {
+        return new WaitForBuildsStepExecution(this, context);
+    }
+
+    @Extension
+    public static class DescriptorImpl extends StepDescriptor {
+
+        @Override
+        public String getFunctionName() {
+            return "waitForBuilds";
+        }
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return "Wait for several builds to complete";
+        }
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            Set<Class<?>> context = new HashSet<>();
+            Collections.addAll(context, FlowNode.class, Run.class, TaskListener.class);
+            return Collections.unmodifiableSet(context);
+        }
+    }
+
+}
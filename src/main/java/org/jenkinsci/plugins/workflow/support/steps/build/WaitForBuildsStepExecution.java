@@ -0,0 +1,328 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
+import hudson.console.ModelHyperlinkNote;
+import hudson.model.Executor;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.CauseOfInterruption;
+import org.jenkinsci.plugins.workflow.actions.LabelAction;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+import org.jenkinsci.plugins.workflow.steps.FlowInterruptedException;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+
+/**
+ * Attaches a {@link WaitForBuildAction} to each build of a {@link WaitForBuildsStep} and collects their results.
+ * {@link WaitForBuildListener} reports each completion through {@link WaitForBuildAction#key}.
+ */
+public class WaitForBuildsStepExecution extends AbstractStepExecutionImpl {
+
+    private static final Logger LOGGER = Logger.getLogger(WaitForBuildsStepExecution.class.getName());
+
+    /** Executions currently waiting, so that listeners can find them from an action. */
+    private static final Map<StepContext, WaitForBuildsStepExecution> RUNNING = new ConcurrentHashMap<>();
+
+    private final transient WaitForBuildsStep step;
+
+    private final BuildAllStep.Mode mode;
+    private final boolean propagate;
+    private final boolean propagateAbort;
+    private final @CheckForNull ArrayList<String> summaryVariables;
+
+    /** State of each build, keyed by the ID given to the step, in that order. */
+    private final Map<String, Waited> waited = new LinkedHashMap<>();
+
+    /** Set once the step has completed; later notifications are ignored. */
+    private boolean done;
+
+    /** Persistent state of one build. */
+    private static final class Waited implements Serializable {
+
+        /** {@link Result#toString} once completed. */
+        @CheckForNull String result;
+
+        /** Why the build will never complete, if deleted. */
+        @CheckForNull String failure;
+
+        boolean isCompleted() {
+            return result != null || failure != null;
+        }
+
+        boolean isSuccess() {
+            return Result.SUCCESS.toString().equals(result);
+        }
+
+        private static final long serialVersionUID = 1L;
+
+    }
+
+    public WaitForBuildsStepExecution(WaitForBuildsStep step, @NonNull StepContext context) {
+        super(context);
+        this.step = step;
+        this.mode = step.getMode();
+        this.propagate = step.isPropagate();
+        this.propagateAbort = step.isPropagateAbort();
+        List<String> variables = BuildTriggerStepExecution.summaryVariables(step.getReturnMode(), step.getSummaryVariables());
+        this.summaryVariables = variables != null ? new ArrayList<>(variables) : null;
+    }
+
+    @Override
+    public boolean start() throws Exception {
+        List<String> runIds = step.getRunIds();
+        if (runIds == null || runIds.isEmpty()) {
+            throw new AbortException("No builds specified");
+        }
+        StepContext context = getContext();
+        TaskListener listener = context.get(TaskListener.class);
+        FlowNode node = context.get(FlowNode.class);
+
+        // Look everything up first, so that a bad ID fails the step before anything is attached.
+        Map<String, Run<?, ?>> runs = new LinkedHashMap<>();
+        for (String runId : runIds) {
+            if (runs.containsKey(runId)) {
+                continue;
+            }
+            Run<?, ?> run = Run.fromExternalizableId(runId);
+            if (run == null) {
+                throw new AbortException("No build exists with runId " + runId);
+            }
+            runs.put(runId, run);
+            waited.put(runId, new Waited());
+        }
+        node.addAction(new LabelAction(Messages.WaitForBuildsStepExecution_waitfor(runs.size())));
+
+        RUNNING.put(context, this);
+        List<String> already = new ArrayList<>();
+        for (Map.Entry<String, Run<?, ?>> entry : runs.entrySet()) {
+            Run<?, ?> run = entry.getValue();
+            String runHyperLink = ModelHyperlinkNote.encodeTo("/" + run.getUrl(), run.getFullDisplayName());
+            if (run.isBuilding()) {
+                run.addAction(new WaitForBuildAction(context, propagate, summaryVariables, entry.getKey()));
+                listener.getLogger().println("Waiting for " + runHyperLink + " to complete");
+            } else {
+                listener.getLogger().println(runHyperLink + " already completed: " + run.getResult());
+                already.add(entry.getKey());
+            }
+        }
+        for (Map.Entry<String, Run<?, ?>> entry : runs.entrySet()) {
+            // Also catches a build which finished before its action was added, so WaitForBuildListener never saw it.
+            if (already.contains(entry.getKey()) || !entry.getValue().isBuilding()) {
+                completed(entry.getValue(), entry.getKey());
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void onResume() {
+        RUNNING.put(getContext(), this);
+        // Catch up on anything which finished while the execution was not registered.
+        List<String> pending = new ArrayList<>();
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            for (Map.Entry<String, Waited> entry : waited.entrySet()) {
+                if (!entry.getValue().isCompleted()) {
+                    pending.add(entry.getKey());
+                }
+            }
+        }
+        try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+            for (String runId : pending) {
+                Run<?, ?> run = Run.fromExternalizableId(runId);
+                if (run == null) {
+                    failed(runId, new AbortException(runId + " was deleted"));
+                } else if (!run.isBuilding()) {
+                    completed(run, runId);
+                }
+            }
+        }
+    }
+
+    /** Called by {@link WaitForBuildListener#onFinalized}. */
+    static void completed(@NonNull StepContext context, @NonNull String key, @NonNull Run<?, ?> run) {
+        WaitForBuildsStepExecution execution = RUNNING.get(context);
+        if (execution == null) {
+            LOGGER.log(Level.FINE, "{0} not running to record completion of {1}", new Object[] {context, run});
+            return;
+        }
+        execution.completed(run, key);
+    }
+
+    /** Called by {@link WaitForBuildListener#onDeleted}. */
+    static void failed(@NonNull StepContext context, @NonNull String key, @NonNull Throwable failure) {
+        WaitForBuildsStepExecution execution = RUNNING.get(context);
+        if (execution == null) {
+            LOGGER.log(Level.FINE, null, failure);
+            return;
+        }
+        execution.failed(key, failure);
+    }
+
+    private void completed(@NonNull Run<?, ?> run, @NonNull String key) {
+        Result result = run.getResult();
+        if (result == null) { /* probably impossible */
+            result = Result.FAILURE;
+        }
+        synchronized (this) {
+            Waited w = waited.get(key);
+            if (w == null || done || w.isCompleted()) {
+                return;
+            }
+            w.result = result.toString();
+        }
+        progress();
+    }
+
+    private void failed(@NonNull String key, @NonNull Throwable failure) {
+        synchronized (this) {
+            Waited w = waited.get(key);
+            if (w == null || done || w.isCompleted()) {
+                return;
+            }
+            w.failure = failure.getMessage() != null ? failure.getMessage() : failure.toString();
+        }
+        progress();
+    }
+
+    /** Decides whether the step is now complete, according to {@link #mode}. */
+    private void progress() {
+        boolean finish;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            boolean all = waited.values().stream().allMatch(Waited::isCompleted);
+            finish = switch (mode) {
+                case ALL -> all;
+                case ANY -> all || waited.values().stream().anyMatch(Waited::isSuccess);
+                case FAIL_FAST -> all || waited.values().stream().anyMatch(w -> w.isCompleted() && !w.isSuccess());
+            };
+            done = finish;
+        }
+        if (!finish) {
+            getContext().saveState();
+            return;
+        }
+        RUNNING.remove(getContext());
+        // Unlike buildAll, the remaining builds were not started by this step, so leave them running.
+        detachAll(null);
+        finish();
+    }
+
+    private void finish() {
+        Map<String, Object> results = new LinkedHashMap<>();
+        List<CauseOfInterruption> causes = new ArrayList<>();
+        List<String> failures = new ArrayList<>();
+        Result worst = Result.SUCCESS;
+        boolean anySuccess = false;
+        try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+            for (Map.Entry<String, Waited> entry : waited.entrySet()) {
+                Waited w = entry.getValue();
+                // Builds still running when the step completes early, or deleted, are reported as null.
+                Run<?, ?> run = w.result != null ? Run.fromExternalizableId(entry.getKey()) : null;
+                results.put(entry.getKey(), run != null ? BuildSummary.of(run, summaryVariables) : null);
+                if (w.isSuccess()) {
+                    anySuccess = true;
+                } else if (w.result != null && run != null) {
+                    causes.add(new DownstreamFailureCause(run));
+                    worst = worst.combine(Result.fromString(w.result));
+                } else if (w.failure != null) {
+                    failures.add(w.failure);
+                }
+            }
+        }
+        boolean failing = mode == BuildAllStep.Mode.ANY ? !anySuccess : !causes.isEmpty() || !failures.isEmpty();
+        if (!propagate || !failing) {
+            getContext().onSuccess(results);
+        } else if (!causes.isEmpty()) {
+            getContext().onFailure(new FlowInterruptedException(worst, false, causes.toArray(new CauseOfInterruption[0])));
+        } else {
+            getContext().onFailure(new AbortException(String.join("; ", failures)));
+        }
+    }
+
+    @Override
+    public void stop(@NonNull Throwable cause) throws Exception {
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            done = true;
+        }
+        RUNNING.remove(getContext());
+        detachAll(propagateAbort ? new BuildTriggerCancelledCause(cause) : null);
+        getContext().onFailure(cause);
+    }
+
+    /**
+     * Removes this step's actions from every build which has not yet completed.
+     * @param abort if not null, also abort those builds
+     */
+    private void detachAll(@CheckForNull CauseOfInterruption abort) {
+        List<String> pending = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<String, Waited> entry : waited.entrySet()) {
+                if (!entry.getValue().isCompleted()) {
+                    pending.add(entry.getKey());
+                }
+            }
+        }
+        StepContext context = getContext();
+        try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+            for (String runId : pending) {
+                Run<?, ?> run = Run.fromExternalizableId(runId);
+                if (run == null || !run.isBuilding()) {
+                    continue;
+                }
+                for (WaitForBuildAction action : run.getActions(WaitForBuildAction.class)) {
+                    if (action.context.equals(context)) {
+                        run.removeAction(action);
+                    }
+                }
+                if (abort != null) {
+                    Executor e = WaitForBuildListener.executorOf(run);
+                    if (e != null) {
+                        e.interrupt(Result.ABORTED, abort);
+                        try {
+                            run.save();
+                        } catch (IOException x) {
+                            LOGGER.log(Level.WARNING, "failed to save interrupt cause on " + run, x);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override public String getStatus() {
+        List<String> pending = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<String, Waited> entry : waited.entrySet()) {
+                if (!entry.getValue().isCompleted()) {
+                    pending.add(entry.getKey());
+                }
+            }
+        }
+        return "waiting for " + pending.size() + " of " + waited.size() + " builds: " + String.join(", ", pending);
+    }
+
+    private static final long serialVersionUID = 1L;
+
+}
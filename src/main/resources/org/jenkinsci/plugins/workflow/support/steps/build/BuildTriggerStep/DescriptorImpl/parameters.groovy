@@ -5,15 +5,13 @@ l.ajax {
     def jobName = request2.getParameter('job')
     if (jobName != null) {
         // Cf. BuildTriggerStepExecution:
-        def contextName = request2.getParameter('context')
-        def context = contextName != null ? app.getItemByFullName(contextName) : null
-        def job = app.getItem(jobName, (hudson.model.Item) context, hudson.model.Item)
+        def job = my.resolveJob(jobName, request2.getParameter('context'))
         if (job instanceof jenkins.model.ParameterizedJobMixIn.ParameterizedJob) {
-            def pdp = job.getProperty(hudson.model.ParametersDefinitionProperty)
-            if (pdp != null) {
+            def parameterDefinitions = my.getParameterDefinitions(job)
+            if (parameterDefinitions != null) {
                 // Cf. ParametersDefinitionProperty/index.jelly:
                 table(width: '100%', class: 'parameters') {
-                    for (parameterDefinition in pdp.parameterDefinitions) {
+                    for (parameterDefinition in parameterDefinitions) {
                         tbody {
                             set("escapeEntryTitleAndDescription", true);
                             // TODO JENKINS-26578 does not work for CredentialsParameterDefinition: pulldown is not populated because select.js is never loaded; <script> section in https://github.com/jenkinsci/credentials-plugin/commit/1045207207fb69d4dc1ede70d7ab743ad463708c not executed
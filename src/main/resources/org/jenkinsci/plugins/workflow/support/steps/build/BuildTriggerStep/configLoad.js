@@ -3,21 +3,33 @@ Behaviour.specify(".textbox-params-reference-holder", 'textbox-onblur-function',
     var textbox = document.getElementById(id);
     var context = e.getAttribute('data-context');
 
+    // Leaving the box without changing the job would otherwise reload the same form, losing any values entered.
+    var loaded = null;
+
     textbox.onblur = function(el) {
         var div = document.getElementById('params');
         const query = new URLSearchParams({
             job: document.getElementById(document.querySelector('#params').dataset.jobfield).value,
             context: context
         });
+        if (query.toString() === loaded) {
+            return;
+        }
+        loaded = query.toString();
         fetch(`${document.querySelector('#params').dataset.descriptor}/parameters?${query}`).then((rsp) => {
-            rsp.text().then((responseText) => {
+            return rsp.text().then((responseText) => {
                 if (rsp.ok) {
                 div.innerHTML = responseText;
                 Behaviour.applySubtree(div);
             } else {
+                loaded = null;
                 div.innerHTML = "<b>ERROR</b>: Failed to load parameter definitions: " + rsp.statusText;
             }
         });
+    }).catch((error) => {
+        // Otherwise the form could not be loaded again for this job, say once the network is back.
+        loaded = null;
+        div.innerHTML = "<b>ERROR</b>: Failed to load parameter definitions: " + error;
     });
     }
 });
\ No newline at end of file
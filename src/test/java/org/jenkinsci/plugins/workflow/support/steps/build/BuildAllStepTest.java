@@ -0,0 +1,104 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.Result;
+import hudson.model.StringParameterDefinition;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.test.steps.SemaphoreStep;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.jvnet.hudson.test.FailureBuilder;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.BuildWatcherExtension;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+@WithJenkins
+class BuildAllStepTest {
+
+    @SuppressWarnings("unused")
+    @RegisterExtension
+    private static final BuildWatcherExtension BUILD_WATCHER = new BuildWatcherExtension();
+
+    private JenkinsRule j;
+
+    @BeforeEach
+    void beforeEach(JenkinsRule rule) {
+        j = rule;
+    }
+
+    @Test
+    void buildAll() throws Exception {
+        FreeStyleProject ds1 = j.createFreeStyleProject("ds1");
+        FreeStyleProject ds2 = j.createFreeStyleProject("ds2");
+        ds2.addProperty(new ParametersDefinitionProperty(new StringParameterDefinition("X", "")));
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition(
+                """
+                        def r = buildAll builds: [[job: 'ds1'], [job: 'ds2', parameters: [string(name: 'X', value: 'a')]], [job: 'ds2', name: 'again', parameters: [string(name: 'X', value: 'b')]]]
+                        echo "ds1: ${r.ds1.result} again: ${r.again.result}"
+                        """, true));
+        WorkflowRun b = j.buildAndAssertSuccess(us);
+        j.assertLogContains("ds1: SUCCESS", b);
+        j.assertLogContains("again: SUCCESS", b);
+        assertEquals(1, ds1.getBuilds().size());
+        assertEquals(2, ds2.getBuilds().size());
+        DownstreamBuildAction action = b.getAction(DownstreamBuildAction.class);
+        assertNotNull(action);
+        assertEquals(3, action.getDownstreamBuilds().size());
+    }
+
+    @Test
+    void failFast() throws Exception {
+        FreeStyleProject failing = j.createFreeStyleProject("failing");
+        failing.getBuildersList().add(new FailureBuilder());
+        WorkflowJob slow = j.jenkins.createProject(WorkflowJob.class, "slow");
+        slow.setDefinition(new CpsFlowDefinition("semaphore 'slow'", true));
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition("buildAll builds: [[job: 'failing'], [job: 'slow']], mode: 'FAIL_FAST'", true));
+        WorkflowRun b = us.scheduleBuild2(0).waitForStart();
+        SemaphoreStep.waitForStart("slow/1", null);
+        j.assertBuildStatus(Result.FAILURE, j.waitForCompletion(b));
+        j.assertBuildStatus(Result.ABORTED, j.waitForCompletion(slow.getBuildByNumber(1)));
+    }
+
+    @Test
+    void any() throws Exception {
+        j.createFreeStyleProject("quick");
+        WorkflowJob slow = j.jenkins.createProject(WorkflowJob.class, "slow");
+        slow.setDefinition(new CpsFlowDefinition("semaphore 'slow'", true));
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition(
+                """
+                        def r = buildAll builds: [[job: 'slow'], [job: 'quick']], mode: 'ANY'
+                        echo "quick: ${r.quick.result}"
+                        """, true));
+        WorkflowRun b = us.scheduleBuild2(0).waitForStart();
+        SemaphoreStep.waitForStart("slow/1", null);
+        j.assertLogContains("quick: SUCCESS", j.waitForCompletion(b));
+        j.assertBuildStatus(Result.ABORTED, j.waitForCompletion(slow.getBuildByNumber(1)));
+    }
+
+    @Test
+    void abortUpstream() throws Exception {
+        WorkflowJob ds = j.jenkins.createProject(WorkflowJob.class, "ds");
+        ds.setDefinition(new CpsFlowDefinition("semaphore 'ds'", true));
+        FreeStyleProject queued = j.createFreeStyleProject("queued");
+        queued.setAssignedLabel(j.jenkins.getLabel("missing"));
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition("buildAll builds: [[job: 'ds'], [job: 'queued']]", true));
+        WorkflowRun b = us.scheduleBuild2(0).waitForStart();
+        SemaphoreStep.waitForStart("ds/1", null);
+        b.doStop();
+        j.assertBuildStatus(Result.ABORTED, j.waitForCompletion(b));
+        j.assertBuildStatus(Result.ABORTED, j.waitForCompletion(ds.getBuildByNumber(1)));
+        assertEquals(0, j.jenkins.getQueue().getItems().length);
+    }
+
+}
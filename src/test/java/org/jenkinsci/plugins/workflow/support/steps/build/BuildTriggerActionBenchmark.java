@@ -0,0 +1,131 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import hudson.model.Action;
+import hudson.model.Actionable;
+import hudson.model.FreeStyleProject;
+import hudson.model.Queue;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@JmhBenchmark
+public class BuildTriggerActionBenchmark {
+
+    public static class TriggersState extends JmhBenchmarkState {
+
+        @Param({"1", "20"})
+        public int triggers;
+
+        Actionable build;
+
+        /** Stands in for the {@code synchronized} list used before copy-on-write snapshots. */
+        List<BuildTriggerAction.Trigger> lockedTriggers;
+
+        @Override
+        public void setup() throws Exception {
+            BuildTriggerAction action = new BuildTriggerAction(null, true, false);
+            List<BuildTriggerAction.Trigger> more = new ArrayList<>();
+            for (int i = 1; i < triggers; i++) {
+                more.add(new BuildTriggerAction.Trigger(null, true, false));
+            }
+            action.addAll(more);
+            build = new FakeBuild();
+            build.addAction(action);
+            lockedTriggers = new ArrayList<>(BuildTriggerAction.triggersFor(build));
+        }
+
+    }
+
+    /**
+     * A batch of queue items which already have some triggers, to fold one more into each.
+     * The batch is rebuilt for each invocation since folding changes the items,
+     * so the benchmark folds into all of them at once to keep the untimed fixture from dominating the nanosecond-scale operation.
+     */
+    public static class FoldState extends JmhBenchmarkState {
+
+        static final int BATCH = 1000;
+
+        @Param({"1", "20", "200"})
+        public int triggers;
+
+        FreeStyleProject project;
+
+        final Queue.Item[] items = new Queue.Item[BATCH];
+
+        final BuildTriggerAction[] added = new BuildTriggerAction[BATCH];
+
+        @Override
+        public void setup() throws Exception {
+            project = getJenkins().createProject(FreeStyleProject.class, "ds");
+        }
+
+        @Setup(Level.Invocation)
+        public void newItems() {
+            for (int i = 0; i < BATCH; i++) {
+                BuildTriggerAction existing = new BuildTriggerAction(null, true, false);
+                List<BuildTriggerAction.Trigger> more = new ArrayList<>();
+                for (int t = 1; t < triggers; t++) {
+                    more.add(new BuildTriggerAction.Trigger(null, true, false));
+                }
+                existing.addAll(more);
+                List<Action> actions = new ArrayList<>();
+                actions.add(existing);
+                items[i] = new Queue.WaitingItem(Calendar.getInstance(), project, actions);
+                added[i] = new BuildTriggerAction(null, true, false);
+            }
+        }
+
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FoldState.BATCH)
+    public void foldIntoExisting(FoldState state) {
+        for (int i = 0; i < FoldState.BATCH; i++) {
+            state.added[i].foldIntoExisting(state.items[i], state.project, List.of());
+        }
+    }
+
+    @Benchmark
+    public void triggersFor(TriggersState state, Blackhole blackhole) {
+        for (BuildTriggerAction.Trigger trigger : BuildTriggerAction.triggersFor(state.build)) {
+            blackhole.consume(trigger);
+        }
+    }
+
+    /** What {@link BuildTriggerAction#triggersFor} used to do, for comparison. */
+    @Benchmark
+    public void triggersForCopyUnderLock(TriggersState state, Blackhole blackhole) {
+        List<BuildTriggerAction.Trigger> triggers = new ArrayList<>();
+        for (BuildTriggerAction action : state.build.getActions(BuildTriggerAction.class)) {
+            synchronized (state.lockedTriggers) {
+                triggers.addAll(state.lockedTriggers);
+            }
+        }
+        for (BuildTriggerAction.Trigger trigger : triggers) {
+            blackhole.consume(trigger);
+        }
+    }
+
+    private static final class FakeBuild extends Actionable {
+
+        @Override
+        public String getDisplayName() {
+            return "fake";
+        }
+
+        @Override
+        public String getSearchUrl() {
+            return "fake";
+        }
+
+    }
+
+}
@@ -0,0 +1,119 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import hudson.model.Executor;
+import hudson.model.FreeStyleProject;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.StringParameterDefinition;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Finding the downstream build of one {@code build} step among many,
+ * as {@link BuildTriggerStepExecution#stop} and {@link BuildTriggerStepExecution#getStatus} must.
+ * The queue is filled by a Pipeline with that many {@code parallel} branches waiting on a job which cannot run,
+ * alongside an idle executor pool of the given size.
+ */
+@JmhBenchmark
+public class BuildTriggerScanBenchmark {
+
+    public static class QueueState extends JmhBenchmarkState {
+
+        @Param({"10", "500"})
+        public int queued;
+
+        @Param({"2", "100"})
+        public int executors;
+
+        List<StepContext> contexts;
+
+        List<StepExecution> executions;
+
+        int next;
+
+        @Override
+        public void setup() throws Exception {
+            Jenkins jenkins = getJenkins();
+            jenkins.setNumExecutors(executors);
+            FreeStyleProject ds = jenkins.createProject(FreeStyleProject.class, "ds");
+            ds.setAssignedLabel(jenkins.getLabel("missing"));
+            ds.addProperty(new ParametersDefinitionProperty(new StringParameterDefinition("which", "")));
+            WorkflowJob us = jenkins.createProject(WorkflowJob.class, "us");
+            us.setDefinition(new CpsFlowDefinition(
+                    "def branches = [:]\n" +
+                    "for (int i = 0; i < " + queued + "; i++) {\n" +
+                    "  def which = \"${i}\"\n" +
+                    "  branches[which] = {build job: 'ds', parameters: [string(name: 'which', value: which)]}\n" +
+                    "}\n" +
+                    "parallel branches", true));
+            WorkflowRun run = us.scheduleBuild2(0).waitForStart();
+            long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(5);
+            while (jenkins.getQueue().getItems().length < queued) {
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException("only " + jenkins.getQueue().getItems().length + " of " + queued + " builds queued");
+                }
+                Thread.sleep(100);
+            }
+            contexts = new ArrayList<>();
+            for (Queue.Item item : jenkins.getQueue().getItems()) {
+                for (BuildTriggerAction.Trigger trigger : BuildTriggerAction.triggersFor(item)) {
+                    contexts.add(trigger.context);
+                }
+            }
+            executions = new ArrayList<>();
+            for (StepExecution execution : run.getExecution().getCurrentExecutions(false).get()) {
+                if (execution instanceof BuildTriggerStepExecution) {
+                    executions.add(execution);
+                }
+            }
+        }
+
+    }
+
+    /** What an untracked step must do: the pass {@link BuildTriggerCancellation} makes over every queue item and executor. */
+    @Benchmark
+    public void scan(QueueState state, Blackhole blackhole) {
+        state.next = (state.next + 1) % state.contexts.size();
+        Set<StepContext> contexts = Set.of(state.contexts.get(state.next));
+        Queue.withLock(() -> BuildTriggerCancellation.scan(Jenkins.get(), contexts, new BuildTriggerCancellation.Visitor() {
+            @Override
+            public void queued(Queue.Item item, StepContext context) {
+                blackhole.consume(item);
+            }
+
+            @Override
+            public void running(Executor executor, Run<?, ?> run, BuildTriggerAction.Trigger trigger) {
+                blackhole.consume(run);
+            }
+        }));
+    }
+
+    /** What a tracked step does instead. */
+    @Benchmark
+    public Queue.Item registry(QueueState state) {
+        state.next = (state.next + 1) % state.contexts.size();
+        BuildTriggerRegistry.Entry entry = BuildTriggerRegistry.get(state.contexts.get(state.next));
+        return entry == null ? null : Queue.getInstance().getItem(entry.queueItemId);
+    }
+
+    @Benchmark
+    public String getStatus(QueueState state) {
+        state.next = (state.next + 1) % state.executions.size();
+        return state.executions.get(state.next).getStatus();
+    }
+
+}
@@ -33,6 +33,9 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import hudson.model.FreeStyleProject;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.StringParameterDefinition;
 import org.htmlunit.AlertHandler;
 import org.htmlunit.Page;
 import org.htmlunit.html.DomElement;
@@ -46,6 +49,7 @@ import org.junit.jupiter.api.Test;
 
 import org.jvnet.hudson.test.Issue;
 import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockFolder;
 import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
 import org.xml.sax.SAXException;
 
@@ -113,6 +117,51 @@ class BuildTriggerStepConfigTest {
 
     }
 
+    @Test
+    void autoCompleteJob() throws Exception {
+        r.createFreeStyleProject("alpha");
+        MockFolder folder = r.createFolder("afolder");
+        folder.createProject(FreeStyleProject.class, "inner");
+        folder.createProject(MockFolder.class, "sub").createProject(FreeStyleProject.class, "deep");
+        BuildTriggerStep.DescriptorImpl d = r.jenkins.getDescriptorByType(BuildTriggerStep.DescriptorImpl.class);
+        assertEquals(List.of("alpha"), d.doAutoCompleteJob(r.jenkins, "a").getValues());
+        assertEquals(List.of("afolder/inner"), d.doAutoCompleteJob(r.jenkins, "afolder/").getValues());
+        assertEquals(List.of("afolder/sub/deep"), d.doAutoCompleteJob(r.jenkins, "afolder/sub/").getValues());
+        assertEquals(List.of("inner"), d.doAutoCompleteJob(folder, "").getValues());
+        assertEquals(List.of("../alpha"), d.doAutoCompleteJob(folder, "../al").getValues());
+        assertEquals(List.of("/afolder/inner"), d.doAutoCompleteJob(folder, "/afolder/i").getValues());
+        folder.renameTo("bfolder");
+        assertEquals(List.of(), d.doAutoCompleteJob(r.jenkins, "afolder/").getValues());
+        assertEquals(List.of("bfolder/inner"), d.doAutoCompleteJob(r.jenkins, "bfolder/").getValues());
+        r.createFreeStyleProject("alpha2");
+        assertEquals(List.of("alpha", "alpha2"), d.doAutoCompleteJob(r.jenkins, "alp").getValues());
+        folder.delete();
+        assertEquals(List.of(), d.doAutoCompleteJob(r.jenkins, "bfolder/").getValues());
+        // Skipping past team/x must not skip team0, which sorts just after anything in team/.
+        r.createFolder("team").createProject(FreeStyleProject.class, "x");
+        r.createFreeStyleProject("team0");
+        assertEquals(List.of("team0"), d.doAutoCompleteJob(r.jenkins, "te").getValues());
+    }
+
+    @Test
+    void parametersFragment() throws Exception {
+        MockFolder folder = r.createFolder("folder");
+        FreeStyleProject ds = folder.createProject(FreeStyleProject.class, "ds");
+        ds.addProperty(new ParametersDefinitionProperty(new StringParameterDefinition("X", "one")));
+        folder.createProject(WorkflowJob.class, "us");
+        try (JenkinsRule.WebClient wc = r.createWebClient()) {
+            String url = "descriptorByName/" + BuildTriggerStep.class.getName() + "/parameters?job=ds&context=folder/us";
+            assertThat(wc.goTo(url).getWebResponse().getContentAsString(), containsString("one"));
+            ds.removeProperty(ParametersDefinitionProperty.class);
+            ds.addProperty(new ParametersDefinitionProperty(new StringParameterDefinition("X", "two")));
+            assertThat(wc.goTo(url).getWebResponse().getContentAsString(), containsString("two"));
+            ds.removeProperty(ParametersDefinitionProperty.class);
+            assertThat(wc.goTo(url).getWebResponse().getContentAsString(), containsString("is not parameterized"));
+            assertThat(wc.goTo("descriptorByName/" + BuildTriggerStep.class.getName() + "/parameters?job=ds").getWebResponse().getContentAsString(),
+                    containsString("no such job ds"));
+        }
+    }
+
     static class Alerter implements AlertHandler {
         final List<String> messages = Collections.synchronizedList(new ArrayList<>());
 
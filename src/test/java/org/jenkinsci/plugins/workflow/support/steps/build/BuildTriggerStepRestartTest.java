@@ -1,27 +1,40 @@
 package org.jenkinsci.plugins.workflow.support.steps.build;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import hudson.model.FreeStyleBuild;
 import hudson.model.FreeStyleProject;
 import hudson.model.Label;
+import hudson.model.ParametersDefinitionProperty;
 import hudson.model.Queue;
 import hudson.model.Result;
 import hudson.model.Run;
+import hudson.model.StringParameterDefinition;
 import hudson.tasks.LogRotator;
+import java.io.Serializable;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import jenkins.model.BuildDiscarderProperty;
 import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
 import org.jenkinsci.plugins.workflow.cps.CpsFlowExecution;
+import org.jenkinsci.plugins.workflow.flow.FlowExecutionOwner;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.pickles.Pickle;
+import org.jenkinsci.plugins.workflow.support.pickles.SingleTypedPickleFactory;
 import org.jenkinsci.plugins.workflow.support.steps.build.DownstreamBuildAction.DownstreamBuild;
+import org.jenkinsci.plugins.workflow.test.steps.SemaphoreStep;
 import org.junit.jupiter.api.Test;
 
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
 import org.jvnet.hudson.test.junit.jupiter.BuildWatcherExtension;
 import org.jvnet.hudson.test.junit.jupiter.JenkinsSessionExtension;
 
@@ -32,10 +45,13 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.any;
 import static org.hamcrest.Matchers.anyOf;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.jvnet.hudson.test.LogRecorder;
 import static org.jvnet.hudson.test.LogRecorder.recorded;
 
@@ -84,6 +100,53 @@ class BuildTriggerStepRestartTest {
         });
     }
 
+    @Test
+    void queueTimeoutAcrossRestart() throws Throwable {
+        sessions.then(j -> {
+            j.jenkins.setNumExecutors(0);
+            j.createFreeStyleProject("ds");
+            WorkflowJob us = j.createProject(WorkflowJob.class, "us");
+            us.setDefinition(new CpsFlowDefinition("build job: 'ds', queueTimeout: 5", true));
+            WorkflowRun b = us.scheduleBuild2(0).waitForStart();
+            j.waitForMessage("Scheduling project", b);
+            ((CpsFlowExecution) b.getExecutionPromise().get()).waitForSuspension();
+            assertFreeStyleProjectsInQueue(1, j);
+        });
+        sessions.then(j -> {
+            WorkflowRun b = j.jenkins.getItemByFullName("us", WorkflowJob.class).getLastBuild();
+            j.assertLogContains("Build of ds did not start within", j.assertBuildStatus(Result.FAILURE, j.waitForCompletion(b)));
+            assertFreeStyleProjectsInQueue(0, j);
+        });
+    }
+
+    @Test
+    void maxInFlightAcrossRestart() throws Throwable {
+        sessions.then(j -> {
+            j.jenkins.setNumExecutors(0);
+            FreeStyleProject ds = j.createFreeStyleProject("ds");
+            ds.setConcurrentBuild(true);
+            ds.addProperty(new ParametersDefinitionProperty(new StringParameterDefinition("which", "")));
+            WorkflowJob us = j.createProject(WorkflowJob.class, "us");
+            us.setDefinition(new CpsFlowDefinition(
+                    "parallel a: {build job: 'ds', parameters: [string(name: 'which', value: 'a')], maxInFlight: 1}, " +
+                    "b: {build job: 'ds', parameters: [string(name: 'which', value: 'b')], maxInFlight: 1}", true));
+            WorkflowRun b = us.scheduleBuild2(0).waitForStart();
+            j.waitForMessage("Waiting until fewer than 1 builds of", b);
+            ((CpsFlowExecution) b.getExecutionPromise().get()).waitForSuspension();
+            assertFreeStyleProjectsInQueue(1, j);
+        });
+        sessions.then(j -> {
+            j.jenkins.setNumExecutors(2);
+            WorkflowRun b = j.jenkins.getItemByFullName("us", WorkflowJob.class).getLastBuild();
+            j.assertBuildStatusSuccess(j.waitForCompletion(b));
+            FreeStyleProject ds = j.jenkins.getItemByFullName("ds", FreeStyleProject.class);
+            assertEquals(2, ds.getBuilds().size());
+            FreeStyleBuild first = ds.getBuildByNumber(1);
+            // Still one at a time.
+            assertThat(ds.getBuildByNumber(2).getStartTimeInMillis(), greaterThanOrEqualTo(first.getStartTimeInMillis() + first.getDuration()));
+        });
+    }
+
     @Test
     void downstreamBuildActionUpstreamCompletesBeforeDownstreamStarts() throws Throwable {
         sessions.then(j -> {
@@ -157,6 +220,22 @@ class BuildTriggerStepRestartTest {
         });
     }
 
+    @Test
+    void graphIndexAcrossRestart() throws Throwable {
+        sessions.then(j -> {
+            j.createFreeStyleProject("ds");
+            WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+            us.setDefinition(new CpsFlowDefinition("build 'ds'; build 'ds'", true));
+            j.buildAndAssertSuccess(us);
+        });
+        sessions.then(j -> {
+            List<BuildGraphIndex.Edge> edges = BuildGraphIndex.get().getDownstream("us#1");
+            assertThat(edges.stream().map(BuildGraphIndex.Edge::getDownstreamId).sorted().toList(), equalTo(List.of("ds#1", "ds#2")));
+            assertThat(edges.stream().map(BuildGraphIndex.Edge::getResult).distinct().toList(), equalTo(List.of("SUCCESS")));
+            assertThat(edges.get(0).getFlowNodeId(), not(equalTo(edges.get(1).getFlowNodeId())));
+        });
+    }
+
     private static void assertFreeStyleProjectsInQueue(int count, JenkinsRule j) {
         Queue.Item[] items = j.jenkins.getQueue().getItems();
         int actual = 0;
@@ -178,6 +257,110 @@ class BuildTriggerStepRestartTest {
         buildDeletion(2, 1);
     }
 
+    /** Released once the first session has shut down, so that the blocked delivery in {@link #reconcileLostDelivery} ends. */
+    private final CountDownLatch undelivered = new CountDownLatch(1);
+
+    @Test
+    void reconcileLostDelivery() throws Throwable {
+        sessions.then(j -> {
+            WorkflowJob ds = j.jenkins.createProject(WorkflowJob.class, "ds");
+            ds.setDefinition(new CpsFlowDefinition("semaphore 'ds'", true));
+            WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+            us.setDefinition(new CpsFlowDefinition("echo \"got ${build('ds').result}\"", true));
+            WorkflowRun b = us.scheduleBuild2(0).waitForStart();
+            SemaphoreStep.waitForStart("ds/1", null);
+            WorkflowRun dsb = ds.getBuildByNumber(1);
+            // As if Jenkins stopped before the completion could be delivered:
+            // deliveries to one step run in order, so the real one waits behind this until shutdown abandons it.
+            CompletionDispatcher.submit(BuildTriggerAction.triggersFor(dsb).get(0).context, () -> {
+                try {
+                    undelivered.await();
+                } catch (InterruptedException x) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            SemaphoreStep.success("ds/1", null);
+            j.assertBuildStatusSuccess(j.waitForCompletion(dsb));
+            await().atMost(10, TimeUnit.SECONDS).until(CompletionDispatcher::getQueueDepth, equalTo(1));
+            // Any later save of the downstream build must keep the undelivered trigger.
+            dsb.save();
+            assertThat(BuildTriggerAction.triggersFor(dsb), hasSize(1));
+            assertTrue(b.isBuilding());
+        });
+        undelivered.countDown();
+        sessions.then(j -> {
+            WorkflowRun b = j.jenkins.getItemByFullName("us", WorkflowJob.class).getBuildByNumber(1);
+            j.assertLogContains("got SUCCESS", j.assertBuildStatusSuccess(j.waitForCompletion(b)));
+            WorkflowRun dsb = j.jenkins.getItemByFullName("ds", WorkflowJob.class).getBuildByNumber(1);
+            assertThat(BuildTriggerAction.triggersFor(dsb), hasSize(0));
+        });
+    }
+
+    @Test
+    void buildAllDownstreamFinishedBeforeResume() throws Throwable {
+        sessions.then(j -> {
+            j.jenkins.setNumExecutors(0);
+            j.createFreeStyleProject("ds");
+            WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+            us.setDefinition(new CpsFlowDefinition(
+                    "def gate = new " + Gate.class.getCanonicalName() + "()\n" +
+                    "def r = buildAll builds: [[job: 'ds']]\n" +
+                    "echo \"got ${r.ds.result} past ${gate}\"", false));
+            WorkflowRun b = us.scheduleBuild2(0).waitForStart();
+            j.waitForMessage("Scheduling project", b);
+            ((CpsFlowExecution) b.getExecutionPromise().get()).waitForSuspension();
+            assertFreeStyleProjectsInQueue(1, j);
+        });
+        sessions.then(j -> {
+            // The upstream program cannot load until the gate opens, so the downstream build starts and finishes first.
+            j.jenkins.setNumExecutors(1);
+            FreeStyleProject ds = j.jenkins.getItemByFullName("ds", FreeStyleProject.class);
+            await().atMost(30, TimeUnit.SECONDS).until(ds::getLastBuild, notNullValue());
+            FreeStyleBuild dsb = j.assertBuildStatusSuccess(j.waitForCompletion(ds.getLastBuild()));
+            await().atMost(10, TimeUnit.SECONDS).until(CompletionDispatcher::getQueueDepth, equalTo(0));
+            assertThat(BuildTriggerAction.triggersFor(dsb), hasSize(1));
+            Gate.OPEN.set(null);
+            WorkflowRun b = j.jenkins.getItemByFullName("us", WorkflowJob.class).getBuildByNumber(1);
+            j.assertLogContains("got SUCCESS past gate", j.assertBuildStatusSuccess(j.waitForCompletion(b)));
+            assertThat(BuildTriggerAction.triggersFor(dsb), hasSize(0));
+        });
+    }
+
+    /** Held by a Pipeline so that after a restart it is not loaded until {@link #OPEN} is set. */
+    public static final class Gate implements Serializable {
+
+        static final SettableFuture<Void> OPEN = SettableFuture.create();
+
+        @Override
+        public String toString() {
+            return "gate";
+        }
+
+        private static final long serialVersionUID = 1L;
+
+    }
+
+    @TestExtension("buildAllDownstreamFinishedBeforeResume")
+    public static final class GatePickleFactory extends SingleTypedPickleFactory<Gate> {
+
+        @Override
+        protected Pickle pickle(Gate gate) {
+            return new GatePickle();
+        }
+
+    }
+
+    private static final class GatePickle extends Pickle {
+
+        @Override
+        public ListenableFuture<?> rehydrate(FlowExecutionOwner owner) {
+            return Futures.transform(Gate.OPEN, v -> new Gate(), MoreExecutors.directExecutor());
+        }
+
+        private static final long serialVersionUID = 1L;
+
+    }
+
     private void buildDeletion(int upstreamNumToKeep, int downstreamNumToKeep) throws Throwable {
         sessions.then(r -> {
             r.jenkins.setQuietPeriod(0);
@@ -29,18 +29,26 @@ import hudson.model.Run;
 import hudson.model.StringParameterDefinition;
 import hudson.model.StringParameterValue;
 import hudson.model.TaskListener;
+import hudson.model.TextParameterDefinition;
+import hudson.model.TextParameterValue;
 import hudson.model.User;
 import hudson.model.queue.QueueTaskFuture;
 import hudson.util.StreamTaskListener;
 
 import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import jenkins.branch.MultiBranchProjectFactory;
@@ -53,9 +61,13 @@ import jenkins.scm.impl.mock.MockSCMController;
 import jenkins.scm.impl.mock.MockSCMDiscoverBranches;
 import jenkins.scm.impl.mock.MockSCMNavigator;
 import jenkins.security.QueueItemAuthenticatorConfiguration;
+import net.sf.json.JSONObject;
 
 import static org.awaitility.Awaitility.await;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.emptyArray;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
@@ -71,6 +83,8 @@ import org.jenkinsci.plugins.workflow.graph.FlowNode;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.jenkinsci.plugins.workflow.steps.FlowInterruptedException;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
 import org.jenkinsci.plugins.workflow.test.steps.SemaphoreStep;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -95,9 +109,14 @@ import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assumptions.assumeFalse;
 
 @WithJenkins
@@ -220,7 +239,7 @@ class BuildTriggerStepTest {
         assertEquals(numberOfUpstreamBuilds, ups.size(), "There should be as many upstream causes as referenced upstream builds");
     }
 
-    static FlowNode findFirstNodeWithDescriptor(FlowExecution execution, Class<BuildTriggerStep.DescriptorImpl> cls) {
+    static FlowNode findFirstNodeWithDescriptor(FlowExecution execution, Class<? extends StepDescriptor> cls) {
         for (FlowNode node : new FlowGraphWalker(execution)) {
             if (node instanceof StepAtomNode stepAtomNode) {
                 if (cls.isInstance(stepAtomNode.getDescriptor())) {
@@ -368,6 +387,271 @@ class BuildTriggerStepTest {
         j.assertBuildStatus(Result.FAILURE,q.get());
     }
 
+    @Test
+    void stopQueuedBuildViaRegistry() throws Exception {
+        j.jenkins.setNumExecutors(0);
+        j.createFreeStyleProject("ds");
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition("build 'ds'", true));
+        WorkflowRun usb = us.scheduleBuild2(0).waitForStart();
+        j.waitForMessage("Scheduling project", usb);
+        ((CpsFlowExecution) usb.getExecutionPromise().get()).waitForSuspension();
+        Queue.Item[] items = j.jenkins.getQueue().getItems();
+        assertEquals(1, items.length);
+        BuildTriggerAction.Trigger trigger = BuildTriggerAction.triggersFor(items[0]).iterator().next();
+        BuildTriggerRegistry.Entry entry = BuildTriggerRegistry.get(trigger.context);
+        assertNotNull(entry);
+        assertEquals(items[0].getId(), entry.queueItemId);
+        usb.doStop();
+        j.assertBuildStatus(Result.ABORTED, j.waitForCompletion(usb));
+        assertEquals(0, j.jenkins.getQueue().getItems().length);
+        assertNull(BuildTriggerRegistry.get(trigger.context));
+    }
+
+    @Test
+    void status() throws Exception {
+        j.jenkins.setNumExecutors(0);
+        WorkflowJob ds = j.jenkins.createProject(WorkflowJob.class, "ds");
+        ds.setDefinition(new CpsFlowDefinition("semaphore 'ds'", true));
+        FreeStyleProject blocker = j.createFreeStyleProject("blocker");
+        blocker.setAssignedLabel(Label.get("nonexistent"));
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition("build 'blocker'", true));
+        WorkflowRun usb = us.scheduleBuild2(0).waitForStart();
+        j.waitForMessage("Scheduling project", usb);
+        CpsFlowExecution e = (CpsFlowExecution) usb.getExecutionPromise().get();
+        e.waitForSuspension();
+        StepExecution execution = e.getCurrentExecutions(false).get().get(0);
+        assertThat(execution.getStatus(), containsString("waiting to schedule blocker"));
+        usb.doStop();
+        j.assertBuildStatus(Result.ABORTED, j.waitForCompletion(usb));
+        us.setDefinition(new CpsFlowDefinition("build 'ds'", true));
+        usb = us.scheduleBuild2(0).waitForStart();
+        SemaphoreStep.waitForStart("ds/1", null);
+        execution = usb.getExecutionPromise().get().getCurrentExecutions(false).get().get(0);
+        assertThat(execution.getStatus(), equalTo("running ds #1"));
+        SemaphoreStep.success("ds/1", null);
+        j.assertBuildStatusSuccess(j.waitForCompletion(usb));
+    }
+
+    @Test
+    void abortManyParallelBranches() throws Exception {
+        int branches = 200;
+        j.jenkins.setNumExecutors(0);
+        FreeStyleProject ds = j.createFreeStyleProject("ds");
+        ds.addProperty(new ParametersDefinitionProperty(new StringParameterDefinition("which", null)));
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition(
+                "def branches = [:]\n" +
+                "for (int i = 0; i < " + branches + "; i++) {\n" +
+                "  def which = \"${i}\"\n" +
+                "  branches[\"branch${i}\"] = {build job: 'ds', parameters: [string(name: 'which', value: which)]}\n" +
+                "}\n" +
+                "parallel branches", true));
+        // Tracked steps are cancelled directly, without scanning.
+        long scans = BuildTriggerCancellation.getScanCount();
+        WorkflowRun usb = us.scheduleBuild2(0).waitForStart();
+        await().atMost(1, TimeUnit.MINUTES).until(() -> j.jenkins.getQueue().getItems().length, equalTo(branches));
+        usb.doStop();
+        j.assertBuildStatus(Result.ABORTED, j.waitForCompletion(usb));
+        assertEquals(0, j.jenkins.getQueue().getItems().length);
+        assertEquals(scans, BuildTriggerCancellation.getScanCount());
+        // Untracked steps (e.g. from older versions) are cancelled with a single scan.
+        long delay = BuildTriggerCancellation.DELAY;
+        BuildTriggerCancellation.DELAY = 1000;
+        try {
+            usb = us.scheduleBuild2(0).waitForStart();
+            await().atMost(1, TimeUnit.MINUTES).until(() -> j.jenkins.getQueue().getItems().length, equalTo(branches));
+            for (Queue.Item item : j.jenkins.getQueue().getItems()) {
+                for (BuildTriggerAction.Trigger trigger : BuildTriggerAction.triggersFor(item)) {
+                    BuildTriggerRegistry.remove(trigger.context);
+                }
+            }
+            usb.doStop();
+            j.assertBuildStatus(Result.ABORTED, j.waitForCompletion(usb));
+            assertEquals(0, j.jenkins.getQueue().getItems().length);
+            assertEquals(scans + 1, BuildTriggerCancellation.getScanCount());
+        } finally {
+            BuildTriggerCancellation.DELAY = delay;
+        }
+    }
+
+    @Test
+    void completionDelivery() throws Exception {
+        j.createFreeStyleProject("ds");
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition("build 'ds'", true));
+        long delivered = CompletionDispatcher.getDeliveredCount();
+        j.buildAndAssertSuccess(us);
+        assertEquals(delivered + 1, CompletionDispatcher.getDeliveredCount());
+        assertEquals(0, CompletionDispatcher.getQueueDepth());
+        String metrics = j.createWebClient().goTo("build-step-latency/", "text/plain").getWebResponse().getContentAsString();
+        assertThat(metrics, containsString("build_step_completion_queue_depth 0"));
+        assertThat(metrics, containsString("build_step_completion_delay_milliseconds_count " + (delivered + 1)));
+        // Past capacity, completions are delivered inline rather than dropped.
+        int capacity = CompletionDispatcher.CAPACITY;
+        CompletionDispatcher.CAPACITY = 0;
+        try {
+            long inline = CompletionDispatcher.getInlineCount();
+            j.buildAndAssertSuccess(us);
+            assertEquals(inline + 1, CompletionDispatcher.getInlineCount());
+        } finally {
+            CompletionDispatcher.CAPACITY = capacity;
+        }
+    }
+
+    @Test
+    void latency() throws Exception {
+        j.createFreeStyleProject("ds");
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition("build 'ds'", true));
+        WorkflowRun b = j.buildAndAssertSuccess(us);
+        List<BuildTriggerLatency> latencies = j.jenkins.getExtensionList(BuildTriggerLatencyListener.class).get(Latencies.class).latencies;
+        assertThat(latencies, hasSize(1));
+        BuildTriggerLatency onNode = findFirstNodeWithDescriptor(b.getExecution(), BuildTriggerStep.DescriptorImpl.class).getAction(BuildTriggerLatency.class);
+        assertNotNull(onNode);
+        assertEquals(latencies.get(0).toString(), onNode.toString());
+        assertEquals("ds", latencies.get(0).getJobFullName());
+        assertEquals(1, latencies.get(0).getBuildNumber());
+        assertEquals(1, BuildTriggerLatencyStatistics.get().getCount("ds"));
+        String metrics = j.createWebClient().goTo("build-step-latency/", "text/plain").getWebResponse().getContentAsString();
+        assertThat(metrics, containsString("build_step_phase_milliseconds_count{job=\"ds\",phase=\"queue\"} 1"));
+    }
+
+    @TestExtension("latency")
+    public static final class Latencies extends BuildTriggerLatencyListener {
+
+        final List<BuildTriggerLatency> latencies = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void onDelivered(@NonNull BuildTriggerLatency latency) {
+            latencies.add(latency);
+        }
+
+    }
+
+    @Test
+    void defaultParameterValuesNotShared() throws Exception {
+        FreeStyleProject ds = j.createFreeStyleProject("ds");
+        ds.addProperty(new ParametersDefinitionProperty(new StringParameterDefinition("X", "dflt"),
+                new BooleanParameterDefinition("B", true, "flag"), new TextParameterDefinition("T", "some\ntext", "text")));
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition("build job: 'ds', parameters: []; build job: 'ds', parameters: []", true));
+        j.buildAndAssertSuccess(us);
+        ParametersAction first = ds.getBuildByNumber(1).getAction(ParametersAction.class);
+        ParametersAction second = ds.getBuildByNumber(2).getAction(ParametersAction.class);
+        for (ParametersAction action : List.of(first, second)) {
+            assertEquals("dflt", action.getParameter("X").getValue());
+            assertEquals(true, action.getParameter("B").getValue());
+            assertEquals("flag", action.getParameter("B").getDescription());
+            assertThat(action.getParameter("T"), instanceOf(TextParameterValue.class));
+            assertEquals("some\ntext", action.getParameter("T").getValue());
+        }
+        // ParameterValue is mutable, so one build must not see another's changes.
+        for (String name : List.of("X", "B", "T")) {
+            assertNotSame(first.getParameter(name), second.getParameter(name));
+        }
+    }
+
+    @Test
+    void traceSpans() throws Exception {
+        j.createFreeStyleProject("ds");
+        WorkflowJob mid = j.jenkins.createProject(WorkflowJob.class, "mid");
+        mid.setDefinition(new CpsFlowDefinition("build 'ds'", true));
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition("build 'mid'", true));
+        WorkflowRun b = j.buildAndAssertSuccess(us);
+        BuildTraceAction root = b.getAction(BuildTraceAction.class);
+        assertNotNull(root);
+        assertNull(root.getParentSpanId());
+        BuildTraceAction middle = mid.getBuildByNumber(1).getAction(BuildTraceAction.class);
+        BuildTraceAction leaf = j.jenkins.getItemByFullName("ds", FreeStyleProject.class).getBuildByNumber(1).getAction(BuildTraceAction.class);
+        assertEquals(root.getTraceId(), middle.getTraceId());
+        assertEquals(root.getTraceId(), leaf.getTraceId());
+        assertEquals(root.getSpanId(), middle.getParentSpanId());
+        assertEquals(middle.getSpanId(), leaf.getParentSpanId());
+        Path file = BuildTraceFileExporter.directory().resolve(LocalDate.now(ZoneOffset.UTC) + ".jsonl");
+        // queue and run spans of mid and ds, and the run span of us
+        await().atMost(10, TimeUnit.SECONDS).until(() -> Files.exists(file) ? Files.readAllLines(file).size() : 0, equalTo(5));
+        Map<String, JSONObject> spans = new HashMap<>();
+        for (String line : Files.readAllLines(file)) {
+            JSONObject span = JSONObject.fromObject(line);
+            assertEquals(root.getTraceId(), span.getString("traceId"));
+            spans.put(span.getString("spanId"), span);
+        }
+        assertEquals("run", spans.get(leaf.getSpanId()).getString("kind"));
+        assertEquals("ds", spans.get(leaf.getSpanId()).getString("job"));
+        assertEquals("SUCCESS", spans.get(leaf.getSpanId()).getString("result"));
+        assertEquals("queue", spans.get(leaf.getQueueSpanId()).getString("kind"));
+        assertEquals(middle.getSpanId(), spans.get(leaf.getQueueSpanId()).getString("parentSpanId"));
+        assertFalse(spans.get(root.getSpanId()).has("parentSpanId"));
+    }
+
+    @Test
+    void priority() throws Exception {
+        boolean enabled = BuildPrioritySorter.ENABLED;
+        BuildPrioritySorter.ENABLED = true;
+        try {
+            BuildPrioritySorter.install();
+            j.jenkins.setNumExecutors(0);
+            j.createFreeStyleProject("nightly");
+            j.createFreeStyleProject("release");
+            WorkflowJob us1 = j.jenkins.createProject(WorkflowJob.class, "us1");
+            us1.setDefinition(new CpsFlowDefinition("build job: 'nightly', wait: false", true));
+            WorkflowJob us2 = j.jenkins.createProject(WorkflowJob.class, "us2");
+            us2.setDefinition(new CpsFlowDefinition("build job: 'release', priority: 10, wait: false", true));
+            j.buildAndAssertSuccess(us1);
+            j.buildAndAssertSuccess(us2);
+            Queue queue = j.jenkins.getQueue();
+            await().atMost(10, TimeUnit.SECONDS).until(() -> {
+                queue.maintain();
+                return queue.getBuildableItems().size();
+            }, equalTo(2));
+            assertEquals("release", ((Item) queue.getBuildableItems().get(0).task).getFullName());
+            assertEquals(10, queue.getBuildableItems().get(0).getAction(BuildPriorityAction.class).getPriority());
+            assertEquals(0, queue.getBuildableItems().get(1).getAction(BuildPriorityAction.class).getPriority());
+        } finally {
+            BuildPrioritySorter.ENABLED = enabled;
+            j.jenkins.getQueue().setSorter(null);
+        }
+    }
+
+    @Test
+    void graphIndex() throws Exception {
+        j.createFreeStyleProject("ds2").getBuildersList().add(new FailureBuilder());
+        WorkflowJob ds = j.jenkins.createProject(WorkflowJob.class, "ds");
+        ds.setDefinition(new CpsFlowDefinition("build job: 'ds2', propagate: false", true));
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition("build 'ds'", true));
+        j.buildAndAssertSuccess(us);
+        BuildGraphIndex index = BuildGraphIndex.get();
+        List<BuildGraphIndex.Edge> downstream = index.getDownstream("us#1");
+        assertThat(downstream, hasSize(1));
+        assertEquals("ds#1", downstream.get(0).getDownstreamId());
+        assertEquals("SUCCESS", downstream.get(0).getResult());
+        await().atMost(10, TimeUnit.SECONDS).until(() -> index.getUpstream("ds2#1"), hasSize(1));
+        assertEquals("ds#1", index.getUpstream("ds2#1").get(0).getUpstreamId());
+        assertEquals("FAILURE", index.getUpstream("ds2#1").get(0).getResult());
+        j.jenkins.setSecurityRealm(j.createDummySecurityRealm());
+        j.jenkins.setAuthorizationStrategy(new MockAuthorizationStrategy().
+                grant(Jenkins.READ, Item.READ).everywhere().to("dev").
+                grant(Jenkins.READ).everywhere().to("other").
+                grant(Item.READ).onItems(us, ds).to("other"));
+        String json = j.createWebClient().login("dev").goTo("build-graph/downstream?run=us%231&depth=2", "application/json").getWebResponse().getContentAsString();
+        assertThat(json, containsString("\"job\":\"ds\""));
+        assertThat(json, containsString("\"job\":\"ds2\""));
+        assertThat(json, containsString("\"result\":\"FAILURE\""));
+        json = j.createWebClient().login("other").goTo("build-graph/downstream?run=us%231&depth=2", "application/json").getWebResponse().getContentAsString();
+        assertThat(json, containsString("\"job\":\"ds\""));
+        assertThat(json, not(containsString("ds2")));
+        json = j.createWebClient().login("other").goTo("build-graph/upstream?run=ds%231&depth=1", "application/json").getWebResponse().getContentAsString();
+        assertThat(json, containsString("\"upstream\":\"us#1\""));
+        us.getBuildByNumber(1).delete();
+        assertThat(index.getDownstream("us#1"), hasSize(0));
+        ds.renameTo("ds-renamed");
+        assertEquals("ds-renamed#1", index.getUpstream("ds2#1").get(0).getUpstreamId());
+    }
+
     /** Interrupting the flow ought to interrupt its downstream builds too, even across nested parallel branches. */
     @Test
     void interruptFlow() throws Exception {
@@ -507,6 +791,117 @@ class BuildTriggerStepTest {
         }
     }
 
+    @Test
+    void queueTimeout() throws Exception {
+        j.createFreeStyleProject("ds").setAssignedLabel(Label.get("nonexistent"));
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition("build job: 'ds', queueTimeout: 1", true));
+        j.assertLogContains("Build of ds did not start within", j.buildAndAssertStatus(Result.FAILURE, us));
+        assertThat(j.jenkins.getQueue().getItems(), emptyArray());
+        us.setDefinition(new CpsFlowDefinition("def b = build job: 'ds', queueTimeout: 1, onQueueTimeout: 'CONTINUE'; echo \"got ${b}\"", true));
+        WorkflowRun b = j.buildAndAssertSuccess(us);
+        j.assertLogContains("did not start within", b);
+        j.assertLogContains("continuing", b);
+        j.assertLogContains("got null", b);
+        assertThat(j.jenkins.getQueue().getItems(), emptyArray());
+    }
+
+    @Test
+    void reuse() throws Exception {
+        WorkflowJob ds = j.jenkins.createProject(WorkflowJob.class, "ds");
+        ds.addProperty(new ParametersDefinitionProperty(new StringParameterDefinition("which", "a")));
+        ds.setDefinition(new CpsFlowDefinition("semaphore 'ds'", true));
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setConcurrentBuild(true);
+        us.addProperty(new ParametersDefinitionProperty(new StringParameterDefinition("which", "a")));
+        us.setDefinition(new CpsFlowDefinition("echo \"got ${build(job: 'ds', parameters: [string(name: 'which', value: params.which)], reuse: true).number}\"", true));
+        WorkflowRun us1 = us.scheduleBuild2(0).waitForStart();
+        SemaphoreStep.waitForStart("ds/1", null);
+        // Same parameters (one by default): joins ds #1.
+        WorkflowRun us2 = us.scheduleBuild2(0).waitForStart();
+        j.waitForMessage("Reusing running build", us2);
+        // Different parameters: needs a build of its own.
+        WorkflowRun us3 = us.scheduleBuild2(0, new ParametersAction(new StringParameterValue("which", "b"))).waitForStart();
+        SemaphoreStep.waitForStart("ds/2", null);
+        SemaphoreStep.success("ds/1", null);
+        SemaphoreStep.success("ds/2", null);
+        j.assertLogContains("got 1", j.assertBuildStatusSuccess(j.waitForCompletion(us1)));
+        j.assertLogContains("got 1", j.assertBuildStatusSuccess(j.waitForCompletion(us2)));
+        j.assertLogContains("got 2", j.assertBuildStatusSuccess(j.waitForCompletion(us3)));
+        assertEquals(2, ds.getBuilds().size());
+        assertEquals(ds.getBuildByNumber(1), us2.getAction(DownstreamBuildAction.class).getDownstreamBuilds().get(0).getBuild());
+        // Once it has finished, it is not reused.
+        SemaphoreStep.success("ds/3", null);
+        j.assertLogNotContains("Reusing", j.buildAndAssertSuccess(us));
+    }
+
+    @Test
+    void reuseAbort() throws Exception {
+        WorkflowJob ds = j.jenkins.createProject(WorkflowJob.class, "ds");
+        ds.setDefinition(new CpsFlowDefinition("semaphore 'ds'", true));
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setConcurrentBuild(true);
+        us.setDefinition(new CpsFlowDefinition("build job: 'ds', reuse: true", true));
+        WorkflowRun us1 = us.scheduleBuild2(0).waitForStart();
+        SemaphoreStep.waitForStart("ds/1", null);
+        WorkflowRun us2 = us.scheduleBuild2(0).waitForStart();
+        j.waitForMessage("Reusing running build", us2);
+        us2.doStop();
+        j.assertBuildStatus(Result.ABORTED, j.waitForCompletion(us2));
+        // The shared build carries on for the step which started it.
+        assertTrue(ds.getBuildByNumber(1).isBuilding());
+        SemaphoreStep.success("ds/1", null);
+        j.assertBuildStatusSuccess(j.waitForCompletion(us1));
+    }
+
+    @Test
+    void maxInFlight() throws Exception {
+        WorkflowJob ds = j.jenkins.createProject(WorkflowJob.class, "ds");
+        ds.setConcurrentBuild(true);
+        ds.addProperty(new ParametersDefinitionProperty(new StringParameterDefinition("which", "")));
+        ds.setDefinition(new CpsFlowDefinition("semaphore 'ds'", true));
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition(
+                "parallel(['a', 'b', 'c'].collectEntries {which -> [which, {build job: 'ds', parameters: [string(name: 'which', value: which)], maxInFlight: 2}]})", true));
+        WorkflowRun b = us.scheduleBuild2(0).waitForStart();
+        SemaphoreStep.waitForStart("ds/1", null);
+        SemaphoreStep.waitForStart("ds/2", null);
+        j.waitForMessage("Waiting until fewer than 2 builds of", b);
+        assertEquals(2, ds.getBuilds().size());
+        // The held-back step reports its wait without looking for a downstream build.
+        List<String> statuses = new ArrayList<>();
+        for (StepExecution execution : b.getExecution().getCurrentExecutions(false).get()) {
+            if (execution instanceof BuildTriggerStepExecution) {
+                statuses.add(execution.getStatus());
+            }
+        }
+        assertThat(statuses, hasItem("waiting for one of 2 slots of ds"));
+        assertThat(j.jenkins.getQueue().getItems(), emptyArray());
+        long released = System.currentTimeMillis();
+        SemaphoreStep.success("ds/1", null);
+        SemaphoreStep.waitForStart("ds/3", null);
+        // The queue span of the deferred build covers its wait for a slot.
+        assertThat(ds.getBuildByNumber(3).getAction(BuildTraceAction.class).getRequestedAt(), lessThan(released));
+        SemaphoreStep.success("ds/2", null);
+        SemaphoreStep.success("ds/3", null);
+        j.assertBuildStatusSuccess(j.waitForCompletion(b));
+        us.setDefinition(new CpsFlowDefinition("build job: 'ds', wait: false, maxInFlight: 1", true));
+        j.assertLogContains("maxInFlight may only be used when waiting for completion of a job", j.buildAndAssertStatus(Result.FAILURE, us));
+    }
+
+    @Test
+    void queueTimeoutSharedItem() throws Exception {
+        j.createFreeStyleProject("ds").setAssignedLabel(Label.get("nonexistent"));
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition("parallel a: {build job: 'ds', queueTimeout: 1}, b: {build 'ds'}", true));
+        WorkflowRun b = us.scheduleBuild2(0).waitForStart();
+        j.waitForMessage("did not start within", b);
+        // The other branch still wants the coalesced build.
+        assertThat(j.jenkins.getQueue().getItems(), arrayWithSize(1));
+        b.doStop();
+        j.assertBuildStatus(Result.ABORTED, j.waitForCompletion(b));
+    }
+
     @Issue("JENKINS-25851")
     @Test
     void buildVariables() throws Exception {
@@ -526,6 +921,18 @@ class BuildTriggerStepTest {
         j.assertLogContains("received RESULT=ds-1 vs. BUILD_NUMBER=null", j.buildAndAssertSuccess(us));
     }
 
+    @Test
+    void returnSummary() throws Exception {
+        WorkflowJob ds = j.jenkins.createProject(WorkflowJob.class, "ds");
+        ds.setDefinition(new CpsFlowDefinition("env.RESULT = \"ds-${env.BUILD_NUMBER}\"; env.OTHER = 'x'", true));
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition(
+                "def s = build job: 'ds', returnMode: 'SUMMARY', summaryVariables: ['RESULT', 'MISSING']\n" +
+                "echo \"got ${s.fullProjectName} ${s.number} ${s.result} ${s.externalizableId} ${s.url} ${s.buildVariables} ${s.duration >= 0}\"", true));
+        WorkflowRun b = j.buildAndAssertSuccess(us);
+        j.assertLogContains("got ds 1 SUCCESS ds#1 job/ds/1/ [RESULT:ds-1] true", b);
+    }
+
     @Issue("JENKINS-28063")
     @Test
     void coalescedQueue() throws Exception {
@@ -597,6 +1004,28 @@ class BuildTriggerStepTest {
         j.assertLogContains("first - p2", ds.getLastBuild());
     }
 
+    @Test
+    void defaultParametersAfterReconfiguration() throws Exception {
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition("build job: 'ds', parameters: [string(name: 'PARAM1', value: 'first')]", true));
+        WorkflowJob ds = j.jenkins.createProject(WorkflowJob.class, "ds");
+        StringParameterDefinition param2 = new StringParameterDefinition("PARAM2", "p2");
+        ds.addProperty(new ParametersDefinitionProperty(new StringParameterDefinition("PARAM1", "p1"), param2));
+        ds.setDefinition(new CpsFlowDefinition("echo \"${PARAM1} - ${PARAM2}\"", true));
+        j.buildAndAssertSuccess(us);
+        j.assertLogContains("first - p2", ds.getLastBuild());
+        // Cached defaults must follow changes made in place to the definitions.
+        param2.setDefaultValue("changed");
+        ds.save();
+        j.buildAndAssertSuccess(us);
+        j.assertLogContains("first - changed", ds.getLastBuild());
+        // As well as replacement of the property.
+        ds.removeProperty(ParametersDefinitionProperty.class);
+        ds.addProperty(new ParametersDefinitionProperty(new StringParameterDefinition("PARAM1", "p1"), new StringParameterDefinition("PARAM2", "replaced")));
+        j.buildAndAssertSuccess(us);
+        j.assertLogContains("first - replaced", ds.getLastBuild());
+    }
+
     @LocalData
     @Test
     void storedForm() throws Exception {
@@ -669,6 +1098,23 @@ class BuildTriggerStepTest {
         j.assertLogContains("Please login to access job ds", j.assertBuildStatus(Result.FAILURE, us.scheduleBuild2(0)));
     }
 
+    @Test
+    void resolveAfterRenameAndShadowing() throws Exception {
+        MockFolder dir = j.createFolder("dir");
+        WorkflowJob us = dir.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition("build 'ds'", true));
+        FreeStyleProject ds = j.createFreeStyleProject("ds");
+        j.buildAndAssertSuccess(us);
+        assertEquals(1, ds.getBuilds().size());
+        // A new job closer to the upstream job takes precedence over the cached one.
+        FreeStyleProject sibling = dir.createProject(FreeStyleProject.class, "ds");
+        j.buildAndAssertSuccess(us);
+        assertEquals(1, sibling.getBuilds().size());
+        sibling.renameTo("other");
+        ds.renameTo("gone");
+        j.assertLogContains("No item named ds found", j.buildAndAssertStatus(Result.FAILURE, us));
+    }
+
     @Issue("JENKINS-48632")
     @Test
     void parameterDescriptions() throws Exception {
@@ -0,0 +1,54 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.ParameterDefinition;
+import hudson.model.ParameterValue;
+import hudson.model.ParametersDefinitionProperty;
+import hudson.model.StringParameterDefinition;
+import hudson.model.StringParameterValue;
+import java.util.ArrayList;
+import java.util.List;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+/** Filling in defaults for a heavily parameterized job when only a few parameters are passed. */
+@JmhBenchmark
+public class CompleteDefaultParametersBenchmark {
+
+    public static class JobState extends JmhBenchmarkState {
+
+        @Param({"10", "40"})
+        public int definitions;
+
+        @Param({"1", "10"})
+        public int supplied;
+
+        FreeStyleProject job;
+
+        List<ParameterValue> parameters;
+
+        @Override
+        public void setup() throws Exception {
+            job = getJenkins().createProject(FreeStyleProject.class, "ds");
+            List<ParameterDefinition> defs = new ArrayList<>();
+            for (int i = 0; i < definitions; i++) {
+                defs.add(new StringParameterDefinition("P" + i, "default" + i));
+            }
+            job.addProperty(new ParametersDefinitionProperty(defs));
+            parameters = new ArrayList<>();
+            for (int i = 0; i < Math.min(supplied, definitions); i++) {
+                parameters.add(new StringParameterValue("P" + i, "value" + i));
+            }
+        }
+
+    }
+
+    @Benchmark
+    public List<ParameterValue> completeDefaultParameters(JobState state) throws Exception {
+        // String values for string definitions need no conversion, so the step context is never consulted.
+        return BuildTriggerStepExecution.completeDefaultParameters(state.parameters, state.job, null);
+    }
+
+}
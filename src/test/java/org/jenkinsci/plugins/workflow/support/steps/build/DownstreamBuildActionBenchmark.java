@@ -0,0 +1,43 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+/** Lookup of the record for a {@code build} step in an upstream build which has already triggered many others. */
+@JmhBenchmark
+public class DownstreamBuildActionBenchmark {
+
+    public static class UpstreamState extends JmhBenchmarkState {
+
+        @Param({"1", "100", "1000"})
+        public int records;
+
+        FreeStyleProject downstream;
+
+        FreeStyleBuild upstream;
+
+        int next;
+
+        @Override
+        public void setup() throws Exception {
+            FreeStyleProject us = getJenkins().createProject(FreeStyleProject.class, "us");
+            downstream = getJenkins().createProject(FreeStyleProject.class, "ds");
+            upstream = us.scheduleBuild2(0).get();
+            for (int i = 0; i < records; i++) {
+                DownstreamBuildAction.getOrCreate(upstream, String.valueOf(i), downstream);
+            }
+        }
+
+    }
+
+    @Benchmark
+    public DownstreamBuildAction.DownstreamBuild getOrCreate(UpstreamState state) {
+        state.next = (state.next + 1) % state.records;
+        return DownstreamBuildAction.getOrCreate(state.upstream, String.valueOf(state.next), state.downstream);
+    }
+
+}
@@ -0,0 +1,184 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Run;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.jenkinsci.plugins.workflow.support.steps.build.DownstreamBuildAction.DownstreamBuild;
+import org.netbeans.insane.scanner.CountingVisitor;
+import org.netbeans.insane.scanner.ScannerUtils;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MemoryAssert;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@WithJenkins
+class DownstreamBuildActionTest {
+
+    private static final int RECORDS = 10_000;
+
+    private static final int JOBS = 40;
+
+    /** As written before job names were kept once per action. */
+    private static String formerXml(int records) {
+        StringBuilder xml = new StringBuilder("<org.jenkinsci.plugins.workflow.support.steps.build.DownstreamBuildAction>\n  <downstreamBuilds>\n");
+        for (int i = 0; i < records; i++) {
+            xml.append("    <org.jenkinsci.plugins.workflow.support.steps.build.DownstreamBuildAction_-DownstreamBuild>\n")
+                    .append("      <flowNodeId>").append(i + 3).append("</flowNodeId>\n")
+                    .append("      <jobFullName>folder-").append(i % JOBS).append("/job-").append(i % JOBS).append("</jobFullName>\n");
+            if (i % 10 != 0) {
+                xml.append("      <buildNumber>").append(1000 + i).append("</buildNumber>\n");
+            }
+            xml.append("    </org.jenkinsci.plugins.workflow.support.steps.build.DownstreamBuildAction_-DownstreamBuild>\n");
+        }
+        return xml.append("  </downstreamBuilds>\n</org.jenkinsci.plugins.workflow.support.steps.build.DownstreamBuildAction>\n").toString();
+    }
+
+    private static void assertRecords(DownstreamBuildAction action, int records) {
+        List<DownstreamBuild> builds = action.getDownstreamBuilds();
+        assertEquals(records, builds.size());
+        for (int i = 0; i < records; i++) {
+            DownstreamBuild build = builds.get(i);
+            assertEquals(String.valueOf(i + 3), build.getFlowNodeId());
+            assertEquals("folder-" + i % JOBS + "/job-" + i % JOBS, build.getJobFullName());
+            if (i % 10 != 0) {
+                assertEquals(1000 + i, build.getBuildNumber());
+            } else {
+                assertNull(build.getBuildNumber());
+                assertNull(build.getBuild());
+            }
+            if (i >= JOBS) {
+                assertSame(builds.get(i - JOBS).getJobFullName(), build.getJobFullName());
+            }
+        }
+    }
+
+    @Test
+    void readsFormerForm(JenkinsRule j) {
+        assertRecords((DownstreamBuildAction) Run.XSTREAM2.fromXML(formerXml(100)), 100);
+    }
+
+    @Test
+    void compactForm(JenkinsRule j) {
+        String former = formerXml(RECORDS);
+        String compact = Run.XSTREAM2.toXML(Run.XSTREAM2.fromXML(former));
+        assertThat(compact, containsString("<job>folder-0/job-0</job>"));
+        assertThat(compact, containsString("<build node=\"3\" job=\"0\"/>"));
+        assertThat(compact, containsString("<build node=\"4\" job=\"1\" number=\"1001\"/>"));
+        assertThat(compact, not(containsString("jobFullName")));
+        assertThat(compact.length(), lessThan(former.length() / 3));
+        assertRecords((DownstreamBuildAction) Run.XSTREAM2.fromXML(compact), RECORDS);
+    }
+
+    @Test
+    void concurrentGetOrCreate(JenkinsRule j) throws Exception {
+        FreeStyleProject ds = j.createFreeStyleProject("ds");
+        List<FreeStyleBuild> downstreams = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            downstreams.add(j.buildAndAssertSuccess(ds));
+        }
+        FreeStyleBuild upstream = j.buildAndAssertSuccess(j.createFreeStyleProject("us"));
+        int threads = 8;
+        int nodes = 500;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch go = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t;
+                futures.add(pool.submit(() -> {
+                    go.await();
+                    // Every thread asks for every record, starting at a different place.
+                    for (int i = 0; i < nodes; i++) {
+                        DownstreamBuildAction.getOrCreate(upstream, String.valueOf((i + offset * 61) % nodes), ds);
+                    }
+                    for (int i = offset; i < downstreams.size(); i += threads) {
+                        DownstreamBuildAction.attach(upstream, String.valueOf(i), downstreams.get(i));
+                    }
+                    return null;
+                }));
+            }
+            go.countDown();
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, upstream.getActions(DownstreamBuildAction.class).size());
+        List<DownstreamBuild> builds = upstream.getAction(DownstreamBuildAction.class).getDownstreamBuilds();
+        assertEquals(nodes, builds.size());
+        Set<String> ids = new HashSet<>();
+        for (DownstreamBuild build : builds) {
+            assertTrue(ids.add(build.getFlowNodeId()), () -> "duplicate record for " + build.getFlowNodeId());
+            int i = Integer.parseInt(build.getFlowNodeId());
+            if (i < downstreams.size()) {
+                assertEquals(downstreams.get(i).getNumber(), build.getBuildNumber());
+            } else {
+                assertNull(build.getBuildNumber());
+            }
+        }
+    }
+
+    /** Copy of the record as it was before job names were kept once per action, for {@link #heapUsage}. */
+    private static final class FormerDownstreamBuild {
+
+        private final String flowNodeId;
+        private final String jobFullName;
+        private Integer buildNumber;
+
+        FormerDownstreamBuild(String flowNodeId, String jobFullName) {
+            this.flowNodeId = flowNodeId;
+            this.jobFullName = jobFullName;
+        }
+
+    }
+
+    /** Records as XStream used to read {@link #formerXml}: every field its own object. */
+    private static List<FormerDownstreamBuild> formerRecords(int records) {
+        List<FormerDownstreamBuild> builds = new ArrayList<>();
+        for (int i = 0; i < records; i++) {
+            FormerDownstreamBuild build = new FormerDownstreamBuild(new String(String.valueOf(i + 3).toCharArray()),
+                    new String(("folder-" + i % JOBS + "/job-" + i % JOBS).toCharArray()));
+            if (i % 10 != 0) {
+                build.buildNumber = Integer.valueOf(1000 + i);
+            }
+            builds.add(build);
+        }
+        return builds;
+    }
+
+    /** Heap retained by an object, counted the way {@link MemoryAssert#assertHeapUsage} does. */
+    private static int retainedSize(Object o) throws Exception {
+        CountingVisitor v = new CountingVisitor();
+        ScannerUtils.scan(ScannerUtils.skipNonStrongReferencesFilter(), v, Collections.singleton(o), false);
+        return v.getTotalSize();
+    }
+
+    /** Each record used to hold its own job name and a boxed build number; now only the record and its flow node ID remain. */
+    @Test
+    void heapUsage(JenkinsRule j) throws Exception {
+        int former = retainedSize(formerRecords(RECORDS));
+        int current = retainedSize(Run.XSTREAM2.fromXML(formerXml(RECORDS)));
+        assertThat(current, lessThan(former * 7 / 10));
+    }
+
+}
@@ -0,0 +1,49 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import hudson.model.AutoCompletionCandidates;
+import hudson.model.FreeStyleProject;
+import hudson.model.Item;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.jvnet.hudson.test.MockFolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+/** Job name completion, as typed into the snippet generator, from a job in one of ten folders sharing the items between them. */
+@JmhBenchmark
+public class JobNameIndexBenchmark {
+
+    public static class TreeState extends JmhBenchmarkState {
+
+        @Param({"1000", "10000", "100000"})
+        public int items;
+
+        MockFolder context;
+
+        @Override
+        public void setup() throws Exception {
+            for (int f = 0; f < 10; f++) {
+                MockFolder folder = getJenkins().createProject(MockFolder.class, "f" + f);
+                for (int i = 0; i < items / 10; i++) {
+                    folder.createProject(FreeStyleProject.class, "job" + i);
+                }
+                if (f == 0) {
+                    context = folder;
+                }
+            }
+        }
+
+    }
+
+    /** The former implementation, still used by core for other fields. */
+    @Benchmark
+    public AutoCompletionCandidates treeWalk(TreeState state) {
+        return AutoCompletionCandidates.ofJobNames(Item.class, "../f3/job1", state.context);
+    }
+
+    @Benchmark
+    public AutoCompletionCandidates index(TreeState state) {
+        return JobNameIndex.candidates(state.context, "../f3/job1");
+    }
+
+}
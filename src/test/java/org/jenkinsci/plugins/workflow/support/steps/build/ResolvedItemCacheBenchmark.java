@@ -0,0 +1,56 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.Item;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import jenkins.model.Jenkins;
+import org.jvnet.hudson.test.MockFolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+/** Resolution of a downstream job given as an absolute path from an upstream job deep in a folder hierarchy. */
+@JmhBenchmark
+public class ResolvedItemCacheBenchmark {
+
+    public static class FoldersState extends JmhBenchmarkState {
+
+        @Param({"1", "5", "10"})
+        public int depth;
+
+        Item upstream;
+
+        String downstream;
+
+        @Override
+        public void setup() throws Exception {
+            MockFolder folder = getJenkins().createProject(MockFolder.class, "f0");
+            StringBuilder path = new StringBuilder("/f0");
+            for (int i = 1; i < depth; i++) {
+                folder = folder.createProject(MockFolder.class, "f" + i);
+                path.append("/f").append(i);
+            }
+            upstream = folder.createProject(FreeStyleProject.class, "upstream");
+            folder.createProject(FreeStyleProject.class, "downstream");
+            downstream = path + "/downstream";
+        }
+
+    }
+
+    @Benchmark
+    public Item uncached(FoldersState state) {
+        try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+            return Jenkins.get().getItem(state.downstream, state.upstream, Item.class);
+        }
+    }
+
+    @Benchmark
+    public Item cached(FoldersState state) {
+        try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+            return ResolvedItemCache.resolve(state.downstream, state.upstream);
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import hudson.XmlFile;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.test.steps.SemaphoreStep;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@WithJenkins
+class UpstreamRunSaverTest {
+
+    private JenkinsRule j;
+
+    private long interval;
+
+    @BeforeEach
+    void beforeEach(JenkinsRule rule) {
+        j = rule;
+        interval = UpstreamRunSaver.INTERVAL;
+        // Long enough that only an explicit flush saves anything.
+        UpstreamRunSaver.INTERVAL = TimeUnit.HOURS.toMillis(1);
+    }
+
+    @AfterEach
+    void afterEach() {
+        UpstreamRunSaver.INTERVAL = interval;
+        // The flush task scheduled an hour out never runs, so leave nothing pending for later test classes.
+        UpstreamRunSaver.flushAll();
+    }
+
+    @Test
+    void coalescesUntilShutdown() throws Exception {
+        FreeStyleBuild b = j.buildAndAssertSuccess(j.createFreeStyleProject("us"));
+        Saves saves = j.jenkins.getExtensionList(SaveableListener.class).get(Saves.class);
+        saves.watch(b);
+        for (int i = 0; i < 100; i++) {
+            UpstreamRunSaver.markDirty(b);
+        }
+        assertEquals(0, saves.count.get());
+        assertTrue(UpstreamRunSaver.isDirty(b));
+        UpstreamRunSaver.flushAll();
+        assertEquals(1, saves.count.get());
+        assertFalse(UpstreamRunSaver.isDirty(b));
+        UpstreamRunSaver.flushAll();
+        assertEquals(1, saves.count.get());
+    }
+
+    @Test
+    void flushedWhenFinalized() throws Exception {
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition("semaphore 'wait'", true));
+        WorkflowRun b = us.scheduleBuild2(0).waitForStart();
+        SemaphoreStep.waitForStart("wait/1", b);
+        UpstreamRunSaver.markDirty(b);
+        UpstreamRunSaver.markDirty(b);
+        assertTrue(UpstreamRunSaver.isDirty(b));
+        SemaphoreStep.success("wait/1", null);
+        j.assertBuildStatusSuccess(j.waitForCompletion(b));
+        assertFalse(UpstreamRunSaver.isDirty(b));
+    }
+
+    @Test
+    void deletedNotSaved() throws Exception {
+        FreeStyleProject p = j.createFreeStyleProject("us");
+        FreeStyleBuild b = j.buildAndAssertSuccess(p);
+        UpstreamRunSaver.markDirty(b);
+        b.delete();
+        assertFalse(UpstreamRunSaver.isDirty(b));
+        UpstreamRunSaver.flushAll();
+        assertFalse(b.getRootDir().exists());
+    }
+
+    @TestExtension("coalescesUntilShutdown")
+    public static final class Saves extends SaveableListener {
+
+        private volatile Saveable watched;
+
+        final AtomicInteger count = new AtomicInteger();
+
+        void watch(Saveable o) {
+            watched = o;
+        }
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o == watched) {
+                count.incrementAndGet();
+            }
+        }
+
+    }
+
+}
@@ -6,6 +6,7 @@ import java.util.logging.Level;
 import jenkins.model.BuildDiscarderProperty;
 import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.test.steps.SemaphoreStep;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.jvnet.hudson.test.LogRecorder;
@@ -13,6 +14,7 @@ import static org.jvnet.hudson.test.LogRecorder.recorded;
 import org.jvnet.hudson.test.junit.jupiter.BuildWatcherExtension;
 import org.jvnet.hudson.test.junit.jupiter.JenkinsSessionExtension;
 
+import static org.awaitility.Awaitility.await;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.any;
 import static org.hamcrest.Matchers.anyOf;
@@ -61,4 +63,31 @@ class WaitForBuildStepRestartTest {
             }
         });
     }
+
+    @Test
+    void propagateAbortAfterRestart() throws Throwable {
+        sessions.then(r -> {
+            var ds = r.jenkins.createProject(WorkflowJob.class, "ds");
+            ds.setDefinition(new CpsFlowDefinition("semaphore 'ds'", true));
+            var us = r.jenkins.createProject(WorkflowJob.class, "us");
+            us.setDefinition(new CpsFlowDefinition("""
+                    def dsRun = build job: 'ds', waitForStart: true
+                    waitForBuild runId: dsRun.externalizableId, propagateAbort: true
+                    """, true));
+            var b = us.scheduleBuild2(0).waitForStart();
+            SemaphoreStep.waitForStart("ds/1", null);
+            await().until(() -> ds.getBuildByNumber(1).getAction(WaitForBuildAction.class) != null);
+        });
+        sessions.then(r -> {
+            var us = r.jenkins.getItemByFullName("us", WorkflowJob.class);
+            var ds = r.jenkins.getItemByFullName("ds", WorkflowJob.class);
+            var b = us.getBuildByNumber(1);
+            // The downstream build was not started again, so its executor has to be found the slow way.
+            r.waitForMessage("Resuming build", ds.getBuildByNumber(1));
+            r.waitForMessage("Resuming build", b);
+            b.doStop();
+            r.assertBuildStatus(Result.ABORTED, r.waitForCompletion(ds.getBuildByNumber(1)));
+            r.assertBuildStatus(Result.ABORTED, r.waitForCompletion(b));
+        });
+    }
 }
@@ -25,6 +25,10 @@ import org.jvnet.hudson.test.junit.jupiter.BuildWatcherExtension;
 import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
 
 import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
@@ -175,6 +179,50 @@ class WaitForBuildStepTest {
         assertEquals(Result.UNSTABLE, action.getResult());
     }
 
+    @Test
+    void returnSummary() throws Exception {
+        WorkflowJob ds = createWaitingDownStreamJob("wait", Result.UNSTABLE);
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition(
+                """
+                        def ds = build job: 'ds', waitForStart: true
+                        def running = waitForBuild runId: "${ds.fullProjectName}#${ds.number}", returnMode: 'SUMMARY'
+                        def done = waitForBuild runId: running.externalizableId, returnMode: 'SUMMARY'
+                        echo "running: ${running.result}, done: ${done.result}"""", true));
+        WorkflowRun usRun = us.scheduleBuild2(0).waitForStart();
+        WorkflowRun dsRun = await().until(() -> ds.getBuildByNumber(1), notNullValue());
+        SemaphoreStep.waitForStart("wait/1", dsRun);
+        waitForWaitForBuildAction(dsRun);
+        SemaphoreStep.success("wait/1", true);
+        j.assertLogContains("running: UNSTABLE, done: UNSTABLE", j.assertBuildStatusSuccess(j.waitForCompletion(usRun)));
+    }
+
+    @Test
+    void latency() throws Exception {
+        WorkflowJob ds = createWaitingDownStreamJob("wait", Result.SUCCESS);
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition(
+                """
+                        def ds = build job: 'ds', waitForStart: true
+                        waitForBuild runId: "${ds.fullProjectName}#${ds.number}"""", true));
+        WorkflowRun usRun = us.scheduleBuild2(0).waitForStart();
+        WorkflowRun dsRun = await().until(() -> ds.getBuildByNumber(1), notNullValue());
+        SemaphoreStep.waitForStart("wait/1", dsRun);
+        waitForWaitForBuildAction(dsRun);
+        SemaphoreStep.success("wait/1", true);
+        j.assertBuildStatusSuccess(j.waitForCompletion(usRun));
+        // The build step only waited for the start, so this is from waitForBuild.
+        await().until(() -> BuildTriggerLatencyStatistics.get().getCount("ds"), is(1L));
+        String metrics = j.createWebClient().goTo("build-step-latency/", "text/plain").getWebResponse().getContentAsString();
+        assertThat(metrics, containsString("build_step_phase_milliseconds_count{job=\"ds\",phase=\"run\"} 1"));
+        assertThat(metrics, containsString("build_step_phase_milliseconds_count{job=\"ds\",phase=\"delivery\"} 1"));
+        // Not observed, since the step did not schedule the build.
+        assertThat(metrics, containsString("build_step_phase_milliseconds_count{job=\"ds\",phase=\"queue\"} 0"));
+        BuildTriggerLatency latency = BuildTriggerStepTest.findFirstNodeWithDescriptor(usRun.getExecution(), WaitForBuildStep.DescriptorImpl.class).getAction(BuildTriggerLatency.class);
+        assertNotNull(latency);
+        assertEquals(BuildTriggerLatency.UNKNOWN, latency.get(BuildTriggerLatency.Phase.QUEUE));
+    }
+
     @Issue("JENKINS-71961")
     @Test
     void abortBuild() throws Exception {
@@ -0,0 +1,115 @@
+package org.jenkinsci.plugins.workflow.support.steps.build;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.test.steps.SemaphoreStep;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.jvnet.hudson.test.FailureBuilder;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.BuildWatcherExtension;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.awaitility.Awaitility.await;
+
+@WithJenkins
+class WaitForBuildsStepTest {
+
+    @SuppressWarnings("unused")
+    @RegisterExtension
+    private static final BuildWatcherExtension BUILD_WATCHER = new BuildWatcherExtension();
+
+    private JenkinsRule j;
+
+    @BeforeEach
+    void beforeEach(JenkinsRule rule) {
+        j = rule;
+    }
+
+    @Test
+    void all() throws Exception {
+        WorkflowJob ds = j.jenkins.createProject(WorkflowJob.class, "ds");
+        ds.setDefinition(new CpsFlowDefinition("semaphore 'ds'", true));
+        j.createFreeStyleProject("quick");
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition(
+                """
+                        def ids = ['ds', 'ds', 'quick'].collect { build(job: it, waitForStart: true).externalizableId }
+                        def r = waitForBuilds runIds: ids, returnMode: 'SUMMARY'
+                        echo "size: ${r.size()} ds#2: ${r['ds#2'].result} quick#1: ${r['quick#1'].result}"
+                        """, true));
+        WorkflowRun b = us.scheduleBuild2(0).waitForStart();
+        SemaphoreStep.waitForStart("ds/1", null);
+        SemaphoreStep.waitForStart("ds/2", null);
+        await().until(() -> ds.getBuildByNumber(2).getAction(WaitForBuildAction.class) != null);
+        SemaphoreStep.success("ds/1", null);
+        SemaphoreStep.success("ds/2", null);
+        j.assertLogContains("size: 3 ds#2: SUCCESS quick#1: SUCCESS", j.assertBuildStatusSuccess(j.waitForCompletion(b)));
+    }
+
+    @Test
+    void failFast() throws Exception {
+        FreeStyleProject failing = j.createFreeStyleProject("failing");
+        failing.getBuildersList().add(new FailureBuilder());
+        WorkflowJob slow = j.jenkins.createProject(WorkflowJob.class, "slow");
+        slow.setDefinition(new CpsFlowDefinition("semaphore 'slow'", true));
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition(
+                """
+                        def ids = ['slow', 'failing'].collect { build(job: it, waitForStart: true).externalizableId }
+                        waitForBuilds runIds: ids, mode: 'FAIL_FAST', propagate: true
+                        """, true));
+        WorkflowRun b = us.scheduleBuild2(0).waitForStart();
+        SemaphoreStep.waitForStart("slow/1", null);
+        j.assertBuildStatus(Result.FAILURE, j.waitForCompletion(b));
+        // Not started by the step, so not aborted by it either.
+        WorkflowRun slowRun = slow.getBuildByNumber(1);
+        await().until(() -> slowRun.getAction(WaitForBuildAction.class) == null);
+        SemaphoreStep.success("slow/1", null);
+        j.assertBuildStatusSuccess(j.waitForCompletion(slowRun));
+    }
+
+    @Test
+    void any() throws Exception {
+        j.createFreeStyleProject("quick");
+        WorkflowJob slow = j.jenkins.createProject(WorkflowJob.class, "slow");
+        slow.setDefinition(new CpsFlowDefinition("semaphore 'slow'", true));
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition(
+                """
+                        def ids = ['slow', 'quick'].collect { build(job: it, waitForStart: true).externalizableId }
+                        def r = waitForBuilds runIds: ids, mode: 'ANY'
+                        echo "quick: ${r['quick#1'].result} slow building: ${r['slow#1'] == null}"
+                        """, true));
+        WorkflowRun b = us.scheduleBuild2(0).waitForStart();
+        SemaphoreStep.waitForStart("slow/1", null);
+        j.assertLogContains("quick: SUCCESS slow building: true", j.assertBuildStatusSuccess(j.waitForCompletion(b)));
+        SemaphoreStep.success("slow/1", null);
+        j.assertBuildStatusSuccess(j.waitForCompletion(slow.getBuildByNumber(1)));
+    }
+
+    @Test
+    void propagateAbort() throws Exception {
+        WorkflowJob ds = j.jenkins.createProject(WorkflowJob.class, "ds");
+        ds.setDefinition(new CpsFlowDefinition("semaphore 'ds'", true));
+        WorkflowJob us = j.jenkins.createProject(WorkflowJob.class, "us");
+        us.setDefinition(new CpsFlowDefinition(
+                """
+                        def ids = (1..2).collect { build(job: 'ds', waitForStart: true).externalizableId }
+                        waitForBuilds runIds: ids, propagateAbort: true
+                        """, true));
+        WorkflowRun b = us.scheduleBuild2(0).waitForStart();
+        SemaphoreStep.waitForStart("ds/1", null);
+        SemaphoreStep.waitForStart("ds/2", null);
+        await().until(() -> ds.getBuildByNumber(2).getAction(WaitForBuildAction.class) != null);
+        b.doStop();
+        j.assertBuildStatus(Result.ABORTED, j.waitForCompletion(b));
+        j.assertBuildStatus(Result.ABORTED, j.waitForCompletion(ds.getBuildByNumber(1)));
+        j.assertBuildStatus(Result.ABORTED, j.waitForCompletion(ds.getBuildByNumber(2)));
+    }
+
+}